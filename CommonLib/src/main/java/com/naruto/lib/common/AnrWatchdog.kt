@@ -0,0 +1,142 @@
+package com.naruto.lib.common
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description 主线程卡顿（ANR）监测
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 后台线程定时向主线程投递心跳，超过 stallThresholdMillis 未执行即视为卡顿；
+ * 卡顿期间按 sampleIntervalMillis 采样主线程调用栈，卡顿结束（或采样数达到上限）后汇总出现最多的栈帧，
+ * 通过 CrashHandler 按签名去重后保存到"anr/"。非调试模式下由 commonLibInit 自动启动
+ */
+object AnrWatchdog {
+    private const val MAX_SAMPLES = 300
+    private const val TOP_FRAMES = 15
+    private const val MAX_STACK_DEPTH = 40
+
+    /**
+     * 判定为卡顿的时长（毫秒）
+     */
+    @Volatile
+    var stallThresholdMillis: Long = 3000
+
+    /**
+     * 卡顿期间采样主线程调用栈的间隔（毫秒）
+     */
+    @Volatile
+    var sampleIntervalMillis: Long = 100
+
+    @Volatile
+    private var thread: Thread? = null
+
+    @Volatile
+    private var heartbeat = 0L//仅在主线程递增
+    private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+    private val beat = Runnable { heartbeat++ }
+
+    val isRunning: Boolean get() = thread != null
+
+    @Synchronized
+    fun start() {
+        if (thread != null) return
+        thread = Thread({ loop() }, "AnrWatchdog").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    @Synchronized
+    fun stop() {
+        thread?.interrupt()
+        thread = null
+    }
+
+    private fun loop() {
+        val self = Thread.currentThread()
+        try {
+            while (thread === self) {
+                val before = heartbeat
+                mainHandler.post(beat)
+                Thread.sleep(stallThresholdMillis)
+                if (heartbeat != before) continue
+                val stallStart = SystemClock.uptimeMillis() - stallThresholdMillis
+                val samples = StallSamples()
+                val mainThread = Looper.getMainLooper().thread
+                while (heartbeat == before && thread === self && samples.count < MAX_SAMPLES) {
+                    samples.add(mainThread.stackTrace)
+                    Thread.sleep(sampleIntervalMillis)
+                }
+                val recovered = heartbeat != before
+                report(samples, SystemClock.uptimeMillis() - stallStart, recovered)
+                //卡顿尚未结束时等待恢复，同一次卡顿只报告一次
+                while (heartbeat == before && thread === self) Thread.sleep(stallThresholdMillis)
+            }
+        } catch (e: InterruptedException) {
+            //stop
+        }
+    }
+
+    private fun report(samples: StallSamples, duration: Long, recovered: Boolean) {
+        if (samples.count == 0) return
+        LogUtils.w("AnrWatchdog") { "--->main thread stalled for ${duration}ms, recovered=$recovered" }
+        val report = samples.format(duration, recovered)
+        CrashHandler.instance?.saveStallReport(report, samples.topStack())
+    }
+
+    /**
+     * @Description 卡顿期间的采样汇总
+     * @Author Naruto Yang
+     * @CreateDate 2026/10/18 0018
+     * @Note 分别统计栈顶帧（自身耗时）与任意位置出现的帧（含调用耗时），以及出现最多的完整调用栈
+     */
+    private class StallSamples {
+        var count = 0
+            private set
+        private val leafFrames = HashMap<StackTraceElement, Int>()
+        private val inclusiveFrames = HashMap<StackTraceElement, Int>()
+        private val stacks = HashMap<List<StackTraceElement>, Int>()
+
+        fun add(stack: Array<StackTraceElement>) {
+            if (stack.isEmpty()) return
+            count++
+            val trimmed = stack.take(MAX_STACK_DEPTH)
+            leafFrames.increase(trimmed[0])
+            trimmed.toHashSet().forEach { inclusiveFrames.increase(it) }//递归调用只计一次
+            stacks.increase(trimmed)
+        }
+
+        /**
+         * 出现最多的完整调用栈
+         */
+        fun topStack(): List<StackTraceElement> = stacks.maxByOrNull { it.value }?.key ?: emptyList()
+
+        fun format(duration: Long, recovered: Boolean): String {
+            val sb = StringBuilder()
+            sb.append("main thread stalled for ").append(duration).append("ms")
+                .append(if (recovered) " (recovered)" else " (still blocked)")
+                .append(", samples: ").append(count).append('\n')
+            appendTop(sb, "栈顶帧", leafFrames)
+            appendTop(sb, "热点帧", inclusiveFrames)
+            stacks.maxByOrNull { it.value }?.let { (stack, n) ->
+                sb.append("\n/****************最常见调用栈(").append(n).append(")****************/\n")
+                stack.forEach { sb.append("\tat ").append(it).append('\n') }
+            }
+            return sb.toString()
+        }
+
+        private fun appendTop(sb: StringBuilder, title: String, frames: Map<StackTraceElement, Int>) {
+            sb.append("\n/****************").append(title).append("****************/\n")
+            frames.entries.sortedByDescending { it.value }.take(TOP_FRAMES).forEach { (frame, n) ->
+                sb.append(n).append(" (").append(n * 100 / count).append("%) ").append(frame).append('\n')
+            }
+        }
+
+        private fun <K> HashMap<K, Int>.increase(key: K) {
+            put(key, (get(key) ?: 0) + 1)
+        }
+    }
+}
@@ -7,16 +7,30 @@ import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Build
 import android.os.Process
+import android.os.SystemClock
 import android.widget.Toast
 import com.naruto.lib.common.TopFunction.currentDateTime
+import com.naruto.lib.common.TopFunction.runInCoroutine
+import com.naruto.lib.common.coroutine.CommonScope
+import com.naruto.lib.common.crash.CrashLoopTracker
+import com.naruto.lib.common.crash.CrashReportFile
+import com.naruto.lib.common.crash.CrashSignatureIndex
 import com.naruto.lib.common.utils.FileUtil
 import com.naruto.lib.common.utils.IntentUtil.createPendingIntentFlag
+import com.naruto.lib.common.utils.LogUtils
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withTimeoutOrNull
+import java.io.File
 import java.io.PrintWriter
 import java.io.StringWriter
 import java.io.Writer
+import java.text.SimpleDateFormat
+import java.util.*
 
 /**
  * @Description
@@ -28,28 +42,132 @@ abstract class CrashHandler : Thread.UncaughtExceptionHandler {
     companion object {
         private val DIR_CRASH_LOG: String = "crash/"
         private val DIR_THROWABLE_LOG: String = "throwable/"
+        private val DIR_ANR_LOG: String = "anr/"
+        private const val CRASH_FILE_NAME_FORMAT = "yyyyMMdd_HHmmssSSS"
+        private const val CRASH_WRITE_BUDGET_MILLIS = 500L
+        private const val DEBUG_FLUSH_TIMEOUT_MILLIS = 1000L
+        private const val CRASH_FALLBACK_WAIT_MILLIS = 3000L
+        private const val SIGNATURE_INDEX_FILE_NAME = "signatures.idx"
+        private const val CRASH_TIMES_FILE_NAME = "times"
+        private const val MAX_RESTART_DELAY_MILLIS = 5 * 60 * 1000L
+
+        /**
+         * 同一签名的崩溃/异常每出现多少次生成一次完整报告（首次出现总会生成）；<=0表示只在首次出现时生成
+         */
+        @Volatile
+        var fullReportInterval: Int = 50
+
+        /**
+         * 统计连续崩溃的时间窗口（毫秒）
+         */
+        @Volatile
+        var crashLoopWindowMillis: Long = 10 * 60 * 1000L
+
+        /**
+         * 启动后稳定运行该时长（毫秒）后清理时间窗口之前的崩溃记录，实际取值不小于 crashLoopWindowMillis
+         */
+        @Volatile
+        var stableMillis: Long = 10 * 60 * 1000L
+
+        /**
+         * 时间窗口内崩溃达到此次数后，下一次以安全模式启动（Global.isSafeMode）
+         */
+        @Volatile
+        var safeModeCrashCount: Int = 3
+
+        /**
+         * 时间窗口内崩溃超过此次数后不再自动重启
+         */
+        @Volatile
+        var maxRestartCount: Int = 8
+
+        /**
+         * 重启延迟基数（毫秒），时间窗口内第n次崩溃后延迟 base*2^(n-2) 重启（第1次立即重启），最长5分钟
+         */
+        @Volatile
+        var restartBackoffBaseMillis: Long = 2000
+
+        /**
+         * 已调用 init 的实例
+         */
+        @Volatile
+        var instance: CrashHandler? = null
+            private set
+    }
+
+    private val reportFile by lazy { CrashReportFile(File(getContext().filesDir, DIR_CRASH_LOG)) }
+    private val stallReportFile by lazy { CrashReportFile(File(getContext().filesDir, DIR_ANR_LOG)) }
+    private val transferMutex = Mutex()
+    @Volatile
+    private var deviceInfo: String? = null//预先生成的系统信息，崩溃时直接使用
+
+    private val crashLoopTracker by lazy {
+        CrashLoopTracker(File(File(getContext().filesDir, DIR_CRASH_LOG), CRASH_TIMES_FILE_NAME))
+    }
+
+    private val signatureIndex by lazy {
+        CrashSignatureIndex(File(File(getContext().filesDir, DIR_CRASH_LOG), SIGNATURE_INDEX_FILE_NAME))
     }
 
     protected abstract fun getContext(): Context
 
     fun init() {
         Thread.setDefaultUncaughtExceptionHandler(this)
+        instance = this
+        val now = System.currentTimeMillis()
+        Global.isSafeMode = kotlin.runCatching {
+            crashLoopTracker.recentCrashCount(now, crashLoopWindowMillis) >= safeModeCrashCount
+        }.getOrDefault(false)
+        reportFile.prepare()
+        signatureIndex.prepare()
+        if (!Global.isSafeMode) {
+            transferReports(reportFile, DIR_CRASH_LOG)
+            transferReports(stallReportFile, DIR_ANR_LOG)
+        }
+        runInCoroutine {
+            //不能早于时间窗口清理，否则启动一段时间后才崩溃的循环永远只计为1次
+            delay(stableMillis.coerceAtLeast(crashLoopWindowMillis))
+            crashLoopTracker.prune(System.currentTimeMillis(), crashLoopWindowMillis)
+        }
+        runInCoroutine {
+            deviceInfo = kotlin.runCatching { collectCrashDeviceInfo() }.getOrNull()
+        }
     }
 
     override fun uncaughtException(t: Thread, e: Throwable) {
-        if (Global.isDebug) return
-        FileUtil.doWithStoragePermission({
-            saveLogInfo("crash", e) {
-/*                MyApplication.doByActivity { activity ->
-                    DialogFactory.showHintDialog(
-                        -1, "很抱歉,程序出现异常,即将重启", "确定",
-                        true, activity
-                    ) { restartApp() }
-                }*/
-                showCrashToast()
-                restartApp()
+        if (Global.isDebug) {
+            //调试模式下日志经分发线程输出到logcat，等待崩溃前的日志输出完再退出
+            LogUtils.awaitFlush(DEBUG_FLUSH_TIMEOUT_MILLIS)
+            return
+        }
+        //记录崩溃、签名与写入报告共用同一个时间上限
+        val deadline = SystemClock.uptimeMillis() + CRASH_WRITE_BUDGET_MILLIS
+        val crashCount = kotlin.runCatching {
+            crashLoopTracker.recordCrash(System.currentTimeMillis(), crashLoopWindowMillis)
+        }.getOrDefault(1)
+        if (reportFile.isPrepared) {
+            val signature = recordSignature("crash", e)
+            //直接写入预先打开的私有文件，下次启动时再转存到公共目录
+            if (shouldWriteFullReport(signature)) kotlin.runCatching {
+                val bytes = buildReport(e, signature).toByteArray()
+                reportFile.write(bytes, (deadline - SystemClock.uptimeMillis()).coerceAtLeast(0))
             }
-        }, autoRequest = false)
+            showCrashToast()
+            restartApp(crashCount)
+            return
+        }
+        //没有预先打开的私有文件时写入公共目录：须同步等待写完（有时间上限），否则进程随后被杀，报告丢失
+        kotlin.runCatching {
+            runBlocking { withTimeoutOrNull(CRASH_FALLBACK_WAIT_MILLIS) { writeLogInfo("crash", e) } }
+        }
+/*        MyApplication.doByActivity { activity ->
+            DialogFactory.showHintDialog(
+                -1, "很抱歉,程序出现异常,即将重启", "确定",
+                true, activity
+            ) { restartApp() }
+        }*/
+        showCrashToast()
+        restartApp(crashCount)
     }
 
     /**
@@ -69,20 +187,102 @@ abstract class CrashHandler : Thread.UncaughtExceptionHandler {
      * @param e
      */
     fun saveExceptionInfo(e: Throwable) {
-        if (!Global.isDebug) FileUtil.doWithStoragePermission({
-            saveLogInfo("exception", e, null)
-        }, autoRequest = false)
+        if (!Global.isDebug) runInCoroutine(name = "SaveLogInfo") { writeLogInfo("exception", e) }
+    }
+
+    /**
+     * 保存主线程卡顿报告（见 AnrWatchdog）：与崩溃一样按签名计数，首次出现或每 fullReportInterval 次
+     * 才保存完整报告，先写入私有目录，再转存到公共目录"anr/"
+     * @param report String 卡顿采样汇总
+     * @param stack List<StackTraceElement> 卡顿期间最常见的调用栈，用于计算签名
+     */
+    fun saveStallReport(report: String, stack: List<StackTraceElement>) {
+        if (Global.isDebug) return
+        val signature = kotlin.runCatching {
+            signatureIndex.record(CrashSignatureIndex.signatureOf("stall", stack), System.currentTimeMillis())
+        }.getOrNull()
+        if (!shouldWriteFullReport(signature)) return
+        val result = signatureHeader(signature) + report +
+                (deviceInfo ?: collectBasicDeviceInfo()) + collectRecentLogs()
+        if (stallReportFile.save(result.toByteArray()) && !Global.isSafeMode)
+            transferReports(stallReportFile, DIR_ANR_LOG)
     }
 
     /**
-     * 保存错误信息
+     * 保存错误信息到公共目录，没有存储权限时不申请，直接放弃
      *
      * @param type      日志类型（crash/exception）
      * @param e
-     * @param callback 保存日志后的操作
+     * @return 是否保存成功（不需要生成完整报告时视为成功）
+     */
+    private suspend fun writeLogInfo(type: String, e: Throwable): Boolean {
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P
+            && !FileUtil.awaitPermissions(FileUtil.permissions, autoRequest = false)
+        ) return false
+        val signature = recordSignature(type, e)
+        if (!shouldWriteFullReport(signature)) return true
+        val result = buildReport(e, signature)
+        //保存文件
+        val relativePath = when (type) {
+            "crash" -> DIR_CRASH_LOG
+            else -> DIR_THROWABLE_LOG
+        }
+        val fileName: String = currentDateTime(CRASH_FILE_NAME_FORMAT) + ".txt"
+        return FileUtil.awaitWriteDataToExternalPublicSpaceFile(
+            result.toByteArray(), FileUtil.MediaType.FILE, relativePath, fileName, false
+        )
+    }
+
+    /**
+     * 将直接写入私有目录的报告（以前进程的崩溃报告、卡顿报告）转存到公共目录，成功后删除；
+     * 没有存储权限时不申请，留到下次转存
+     * @param relativePath String 公共目录下的相对路径
+     */
+    private fun transferReports(file: CrashReportFile, relativePath: String) {
+        runInCoroutine(CommonScope.FILE, "CrashReportTransfer") {
+            transferMutex.withLock {//避免同时转存同一份报告
+                val reports = file.listReports()
+                if (reports.isEmpty()) return@withLock
+                if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P
+                    && !FileUtil.awaitPermissions(FileUtil.permissions, autoRequest = false)
+                ) return@withLock
+                val format = SimpleDateFormat(CRASH_FILE_NAME_FORMAT, Locale.getDefault())
+                reports.forEach { report ->
+                    val time = report.nameWithoutExtension.toLongOrNull() ?: report.lastModified()
+                    val success = FileUtil.awaitWriteDataToExternalPublicSpaceFile(
+                        report.readBytes(), FileUtil.MediaType.FILE, relativePath,
+                        format.format(Date(time)) + ".txt", false
+                    )
+                    if (success) report.delete()
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录签名出现次数
+     * @return CrashSignatureIndex.Entry? 索引读写失败时返回null
+     */
+    private fun recordSignature(type: String, e: Throwable): CrashSignatureIndex.Entry? =
+        kotlin.runCatching {
+            signatureIndex.record(CrashSignatureIndex.signatureOf(type, e), System.currentTimeMillis())
+        }.getOrNull()
+
+    /**
+     * 首次出现或每 fullReportInterval 次生成完整报告，其余只在索引中计数
+     */
+    private fun shouldWriteFullReport(signature: CrashSignatureIndex.Entry?): Boolean {
+        val count = signature?.count ?: return true
+        val interval = fullReportInterval
+        return count == 1 || (interval > 0 && count % interval == 0)
+    }
+
+    /**
+     * 生成错误信息：签名统计+调用栈+系统信息+最近日志
      */
-    private fun saveLogInfo(type: String, e: Throwable, callback: ((Boolean) -> Unit)?) {
+    private fun buildReport(e: Throwable, signature: CrashSignatureIndex.Entry?): String {
         val info: Writer = StringWriter()
+        info.write(signatureHeader(signature))
         val printWriter = PrintWriter(info)
         e.printStackTrace(printWriter)
         var cause = e.cause
@@ -90,23 +290,43 @@ abstract class CrashHandler : Thread.UncaughtExceptionHandler {
             cause.printStackTrace(printWriter)
             cause = cause.cause
         }
-        val result = info.toString() + collectCrashDeviceInfo()
-        //保存文件
-        val relativePath = when (type) {
-            "crash" -> DIR_CRASH_LOG
-            else -> DIR_THROWABLE_LOG
-        }
-        val fileName: String = currentDateTime("yyyyMMdd_HHmmssSSS") + ".txt"
-        FileUtil.writeDataToExternalPublicSpaceFile(
-            result.toByteArray(), FileUtil.MediaType.FILE, relativePath, fileName, false, callback
-        )
+        return info.toString() + (deviceInfo ?: collectBasicDeviceInfo()) + collectRecentLogs()
     }
 
 
     /**
-     * 重启app
+     * 签名统计，写在报告开头
      */
-    private fun restartApp() {
+    private fun signatureHeader(signature: CrashSignatureIndex.Entry?): String {
+        signature ?: return ""
+        val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
+        return "signature:%016x count:%d firstSeen:%s lastSeen:%s\n\n".format(
+            signature.signature, signature.count,
+            format.format(Date(signature.firstSeen)), format.format(Date(signature.lastSeen))
+        )
+    }
+
+    /**
+     * 重启app，连续崩溃时按指数退避延迟重启，超过 maxRestartCount 次后不再重启
+     * @param crashCount Int 时间窗口内的崩溃次数
+     */
+    private fun restartApp(crashCount: Int) {
+        if (crashCount <= maxRestartCount) scheduleRestart(restartDelay(crashCount))
+        //清空Activity栈,防止系统自动重启至崩溃页面,导致崩溃再次出现.
+        Global.finishAllActivity()
+        //退出程序
+        Process.killProcess(Process.myPid())
+        System.exit(0)
+        System.gc()
+    }
+
+    private fun restartDelay(crashCount: Int): Long {
+        if (crashCount <= 1) return 0
+        val shift = (crashCount - 2).coerceAtMost(20)
+        return (restartBackoffBaseMillis shl shift).coerceIn(0, MAX_RESTART_DELAY_MILLIS)
+    }
+
+    private fun scheduleRestart(delayMillis: Long) {
         val context = getContext()
         val intent = context.packageManager.getLaunchIntentForPackage(context.packageName)!!
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP or Intent.FLAG_ACTIVITY_CLEAR_TASK)
@@ -118,31 +338,24 @@ abstract class CrashHandler : Thread.UncaughtExceptionHandler {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             mgr.setExactAndAllowWhileIdle(
                 AlarmManager.RTC,
-                System.currentTimeMillis(),
+                System.currentTimeMillis() + delayMillis,
                 restartIntent
             )
         } else {
-            mgr.setExact(AlarmManager.RTC, System.currentTimeMillis(), restartIntent)
+            mgr.setExact(AlarmManager.RTC, System.currentTimeMillis() + delayMillis, restartIntent)
         }
-
-        //清空Activity栈,防止系统自动重启至崩溃页面,导致崩溃再次出现.
-        Global.finishAllActivity()
-        //退出程序
-        Process.killProcess(Process.myPid())
-        System.exit(0)
-        System.gc()
     }
 
 
     /**
-     * 获取系统信息
+     * 获取系统信息，在 init 后于后台执行一次
      */
     private fun collectCrashDeviceInfo(): String {
         val sb = StringBuilder("\n/****************系统信息****************/\n")
         try {
             val context: Context = getContext()
             val pm = context.packageManager
-            val pi = pm.getPackageInfo(context.packageName, PackageManager.GET_ACTIVITIES)
+            val pi = pm.getPackageInfo(context.packageName, 0)
             if (pi != null) {
                 appendInfo(sb, "版本名称", pi.versionName)
                 appendInfo(sb, "版本号", pi.versionCode)
@@ -163,6 +376,24 @@ abstract class CrashHandler : Thread.UncaughtExceptionHandler {
         return sb.toString()
     }
 
+    /**
+     * 系统信息尚未生成时使用的简要信息，不涉及反射与PackageManager
+     */
+    private fun collectBasicDeviceInfo(): String {
+        val sb = StringBuilder("\n/****************系统信息****************/\n")
+        appendInfo(sb, "MANUFACTURER", Build.MANUFACTURER)
+        appendInfo(sb, "MODEL", Build.MODEL)
+        appendInfo(sb, "SDK_INT", Build.VERSION.SDK_INT)
+        appendInfo(sb, "FINGERPRINT", Build.FINGERPRINT)
+        return sb.toString()
+    }
+
+    /**
+     * 获取崩溃前的最近日志
+     */
+    private fun collectRecentLogs(): String =
+        "\n/****************最近日志****************/\n" + LogUtils.getRecentLogs()
+
     /**
      * @param sb
      * @param label
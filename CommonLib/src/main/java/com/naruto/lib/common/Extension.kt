@@ -4,8 +4,12 @@ import android.annotation.SuppressLint
 import android.content.Context
 import android.provider.Settings
 import android.util.SparseArray
+import com.naruto.lib.common.TopFunction.callbackOnCurrentThread
+import com.naruto.lib.common.TopFunction.runInCoroutine
 import com.naruto.lib.common.utils.FileUtil
-import kotlinx.coroutines.runBlocking
+import com.naruto.lib.common.utils.LogUtils
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import java.nio.charset.Charset
 import java.util.*
 
@@ -32,6 +36,10 @@ fun <E> SparseArray<E>.getOrPut(key: Int, defaultValue: () -> E): E {
 
 private var AndroidID: String? = null
 
+/**
+ * 获取AndroidID，无效时使用保存在文件的UUID代替
+ * @param callback 已有缓存时直接回调，否则回到调用线程回调（见 callbackOnCurrentThread）
+ */
 @SuppressLint("HardwareIds")
 fun Context.getAndroidID(callback: (String) -> Unit) {
     if (AndroidID == null)
@@ -42,29 +50,36 @@ fun Context.getAndroidID(callback: (String) -> Unit) {
 
 /**
  * 获取保存在文件的UUID
- * @return String
+ * @param callback 回到调用线程回调（调用线程没有Looper时在IO线程回调），见 callbackOnCurrentThread
  */
 fun getUUIDFromFile(fileName: String, callback: (String) -> Unit) {
+    val onResult = callbackOnCurrentThread(callback)
+    runInCoroutine(name = "UUIDFromFile") { onResult(getUUIDFromFile(fileName)) }
+}
+
+/**
+ * 获取保存在文件的UUID（挂起版本），文件不存在或内容为空时创建；
+ * 读取与创建在同一个锁内进行，并发调用时只会生成一个UUID
+ * @return String
+ */
+suspend fun getUUIDFromFile(fileName: String): String = uuidMutex.withLock {
     val mediaType = FileUtil.MediaType.FILE
-    FileUtil.getFileInExternalPublicSpace(mediaType, "", fileName)
-        ?.also { uri ->
-            FileUtil.readDataFromFile(uri) {
-                val id = it?.run {
-                    readBytes().toString(Charset.defaultCharset()).takeIf { s -> s.isNotEmpty() }
-                } ?: createUUID(mediaType, fileName)
-                callback(id)
-            }
-        }
-        ?: callback(createUUID(mediaType, fileName))
+    FileUtil.awaitGetFileInExternalPublicSpace(mediaType, "", fileName)
+        ?.let { uri -> FileUtil.awaitReadDataFromFile(uri) }
+        ?.toString(Charset.defaultCharset())?.takeIf { it.isNotEmpty() }
+        ?: createUUID(mediaType, fileName)
 }
 
+private val uuidMutex = Mutex()
 
-fun createUUID(mediaType: FileUtil.MediaType, fileName: String): String {
+/**
+ * 生成UUID并保存到文件，写入完成后返回
+ */
+suspend fun createUUID(mediaType: FileUtil.MediaType, fileName: String): String {
     return UUID.randomUUID().toString().also {
-        runBlocking {
-            FileUtil.writeDataToExternalPublicSpaceFile(
-                it.toByteArray(), mediaType, "", fileName, false, null
-            )
-        }
+        val success = FileUtil.awaitWriteDataToExternalPublicSpaceFile(
+            it.toByteArray(), mediaType, "", fileName, false
+        )
+        if (!success) LogUtils.e("--->save UUID to $fileName failed")
     }
-}
\ No newline at end of file
+}
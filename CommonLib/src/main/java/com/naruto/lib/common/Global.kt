@@ -16,8 +16,6 @@ import com.naruto.lib.common.base.BaseActivity
 import com.naruto.lib.common.helper.PermissionHelper
 import com.naruto.lib.common.utils.LogUtils
 import com.naruto.lib.common.utils.NotificationUtil
-import kotlinx.coroutines.MainScope
-import kotlinx.coroutines.launch
 import java.lang.ref.WeakReference
 
 /**
@@ -66,6 +64,13 @@ object Global {
 
     var isDebug: Boolean = true
 
+    /**
+     * 是否处于安全模式：短时间内连续崩溃达到 CrashHandler.safeModeCrashCount 次后的下一次启动，
+     * 此时本模块会跳过非必要的初始化，应用也可据此跳过自身的非必要初始化；稳定运行一段时间后自动恢复
+     */
+    var isSafeMode: Boolean = false
+        internal set
+
     var isKeepFontSize: Boolean = false//是否屏蔽系统字体大小设置，保持字体大小不随系统改变
 
     fun toast(msg: String, shortDuration: Boolean = true) {
@@ -84,8 +89,18 @@ object Global {
         return Looper.myLooper() == Looper.getMainLooper()
     }
 
-    fun runOnMainThread(block: () -> Unit) {
-        if (isMainThread()) block() else MainScope().launch { block() }
+    /**
+     * 在主线程执行，当前已是主线程时直接执行
+     * @param urgent Boolean 为true时插到主线程消息队列最前面，否则与其他任务合并按帧执行，见 MainThreadExecutor
+     * @param block Function0<Unit>
+     */
+    @JvmOverloads
+    fun runOnMainThread(urgent: Boolean = false, block: () -> Unit) {
+        when {
+            isMainThread() -> block()
+            urgent -> MainThreadExecutor.executeUrgent { block() }
+            else -> MainThreadExecutor.execute { block() }
+        }
     }
 
     /**
@@ -177,7 +192,7 @@ object Global {
         }
 
         override fun onActivityResumed(activity: Activity) {
-            LogUtils.i("--->activity=$activity")
+            LogUtils.i { "--->activity=$activity" }
             currentActivityWF = WeakReference(activity) //记录当前正在活动的activity
             while (operationQueue.isNotEmpty()) {
                 operationQueue.removeAt(0).invoke(activity as BaseActivity)
@@ -188,6 +203,7 @@ object Global {
 
         override fun onActivityStopped(activity: Activity) {
             mActivityStartCount--
+            if (mActivityStartCount == 0) LogUtils.onAppStop()//应用退到后台
         }
 
         override fun onActivitySaveInstanceState(activity: Activity, outState: Bundle) {}
@@ -206,15 +222,16 @@ object Global {
 fun Application.commonLibInit() {
     if (hasInitialized) return
     hasInitialized = true
+    Global.getMainModuleContext = { applicationContext }
     object : CrashHandler() {
         override fun getContext(): Context = applicationContext
     }.init()
-    Global.getMainModuleContext = { applicationContext }
     registerActivityLifecycleCallbacks(Global.MyActivityLifecycleCallbacks())//监听activity生命周期
     Global.isDebug = kotlin.runCatching {
         Class.forName("$packageName.BuildConfig").getField("DEBUG").get(null) as Boolean
     }.onFailure { Log.e("naruto", "--->reflect error", it) }.getOrDefault(true)
     LogUtils.init()
+    if (!Global.isDebug && !Global.isSafeMode) AnrWatchdog.start()
 }
 
 private var hasInitialized = false
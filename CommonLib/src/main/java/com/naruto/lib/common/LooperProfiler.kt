@@ -0,0 +1,188 @@
+package com.naruto.lib.common
+
+import android.os.Looper
+import android.util.Log
+import android.util.Printer
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description 主线程消息耗时统计
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 通过 Looper.setMessageLogging 获取每条消息的开始/结束，按回调类名（无回调时为"Handler类名#what"）
+ * 统计次数、p50、p99、最大耗时，用于定位卡顿来源。需手动 start，dump 通过 LogUtils 输出。
+ * 统计表按字符区间查找，只有首次出现的回调类才会分配字符串；直方图按每2倍4个桶划分，分位数为桶上限的近似值。
+ * 注意：会替换主线程Looper原有的Printer
+ */
+object LooperProfiler {
+    private const val TAG = "LooperProfiler"
+    private const val DISPATCH_PREFIX = ">>>>> Dispatching to "
+    private const val FINISH_PREFIX = "<<<<< Finished to "
+    private const val TABLE_SIZE = 512//须为2的幂，超出后新的回调类统计到 OTHER_KEY
+    private const val OTHER_KEY = "<other>"
+    private const val NO_WHAT = -1
+    private const val OTHER_MARK = -2
+    private const val SUB_BUCKETS = 4
+    private const val BUCKETS = SUB_BUCKETS * 40
+
+    private val lock = Any()
+    private val table = arrayOfNulls<Stat>(TABLE_SIZE)
+    private var size = 0
+    private var dispatchStart = 0L//以下仅在主线程访问
+    private var dispatchLine: String? = null
+
+    @Volatile
+    var isRunning: Boolean = false
+        private set
+
+    private val printer = Printer { line ->
+        if (line.startsWith(DISPATCH_PREFIX)) {
+            dispatchLine = line
+            dispatchStart = System.nanoTime()
+        } else {
+            val dispatch = dispatchLine ?: return@Printer
+            val elapsed = System.nanoTime() - dispatchStart
+            dispatchLine = null
+            if (line.startsWith(FINISH_PREFIX)) record(dispatch, elapsed)
+        }
+    }
+
+    fun start() {
+        if (isRunning) return
+        isRunning = true
+        Looper.getMainLooper().setMessageLogging(printer)
+    }
+
+    fun stop() {
+        if (!isRunning) return
+        isRunning = false
+        Looper.getMainLooper().setMessageLogging(null)
+    }
+
+    fun reset() {
+        synchronized(lock) {
+            table.fill(null)
+            size = 0
+        }
+    }
+
+    /**
+     * 通过 LogUtils 输出统计结果（logfmt格式，按总耗时降序）
+     * @param limit Int 最多输出的条数
+     */
+    fun dump(limit: Int = 30) {
+        val stats = synchronized(lock) { table.filterNotNull().map { it.snapshot() } }
+        stats.sortedByDescending { it.totalMicros }.take(limit).forEach {
+            LogUtils.kv(TAG, Log.INFO, "looper_dispatch").kv("callback", it.key).kv("count", it.count)
+                .kv("p50_ms", it.p50Micros / 1000.0).kv("p99_ms", it.p99Micros / 1000.0)
+                .kv("max_ms", it.maxMicros / 1000.0).kv("total_ms", it.totalMicros / 1000).log()
+        }
+    }
+
+    /**
+     * 行格式：>>>>> Dispatching to Handler (类名) {hash} 回调: what，回调为空时为"null"
+     * （结束行不含what，因此解析开始行）
+     */
+    private fun record(line: String, elapsedNanos: Long) {
+        val handlerEnd = line.indexOf("} ", DISPATCH_PREFIX.length)
+        val whatStart = line.lastIndexOf(": ")
+        if (handlerEnd < 0 || whatStart <= handlerEnd) return
+        var start = handlerEnd + 2
+        var end = whatStart
+        val hashStart = line.lastIndexOf('@', end)
+        if (hashStart > start) end = hashStart//去掉"@hash"
+        var withWhat = false
+        if (line.regionMatches(start, "null", 0, 4) && end - start == 4) {
+            //无回调：使用Handler类名+what
+            start = line.indexOf('(', DISPATCH_PREFIX.length) + 1
+            end = line.indexOf(')', start)
+            if (start <= 0 || end < 0) return
+            withWhat = true
+        }
+        val micros = elapsedNanos / 1000
+        synchronized(lock) {
+            find(line, start, end, if (withWhat) whatStart + 2 else NO_WHAT).add(micros)
+        }
+    }
+
+    /**
+     * 查找或创建统计项
+     * @param whatStart Int >=0时key为 line[start,end) + "#" + line[whatStart,)，否则为 line[start,end)
+     */
+    private fun find(line: String, start: Int, end: Int, whatStart: Int): Stat {
+        var hash = 0
+        for (i in start until end) hash = 31 * hash + line[i].code
+        if (whatStart >= 0) for (i in whatStart until line.length) hash = 31 * hash + line[i].code
+        var index = hash and (TABLE_SIZE - 1)
+        while (true) {
+            val stat = table[index] ?: break
+            if (stat.hash == hash && stat.matches(line, start, end, whatStart)) return stat
+            index = (index + 1) and (TABLE_SIZE - 1)
+        }
+        //至少保留一个空位，保证探测能结束
+        if (size >= TABLE_SIZE - 2 && whatStart != OTHER_MARK) return findOther()
+        val key = if (whatStart >= 0) line.substring(start, end) + "#" + line.substring(whatStart)
+        else line.substring(start, end)
+        size++
+        return Stat(key, hash).also { table[index] = it }
+    }
+
+    private fun findOther(): Stat = find(OTHER_KEY, 0, OTHER_KEY.length, OTHER_MARK)
+
+    private class Stat(val key: String, val hash: Int) {
+        private val buckets = IntArray(BUCKETS)
+        private var count = 0L
+        private var totalMicros = 0L
+        private var maxMicros = 0L
+
+        fun matches(line: String, start: Int, end: Int, whatStart: Int): Boolean {
+            val len = end - start
+            if (whatStart < 0) return key.length == len && key.regionMatches(0, line, start, len)
+            val whatLen = line.length - whatStart
+            return key.length == len + 1 + whatLen && key.regionMatches(0, line, start, len)
+                    && key[len] == '#' && key.regionMatches(len + 1, line, whatStart, whatLen)
+        }
+
+        fun add(micros: Long) {
+            count++
+            totalMicros += micros
+            if (micros > maxMicros) maxMicros = micros
+            buckets[bucketOf(micros)]++
+        }
+
+        fun snapshot(): Snapshot =
+            Snapshot(key, count, totalMicros, maxMicros, percentile(0.5), percentile(0.99))
+
+        private fun percentile(p: Double): Long {
+            val target = Math.ceil(count * p).toLong().coerceAtLeast(1)
+            var sum = 0L
+            for (i in buckets.indices) {
+                sum += buckets[i]
+                if (sum >= target) return upperBound(i).coerceAtMost(maxMicros)
+            }
+            return maxMicros
+        }
+    }
+
+    private class Snapshot(
+        val key: String, val count: Long, val totalMicros: Long, val maxMicros: Long,
+        val p50Micros: Long, val p99Micros: Long
+    )
+
+    /**
+     * 桶序号：每个2的幂区间再等分为 SUB_BUCKETS 份
+     */
+    private fun bucketOf(micros: Long): Int {
+        if (micros < SUB_BUCKETS) return micros.coerceAtLeast(0).toInt()
+        val octave = 63 - java.lang.Long.numberOfLeadingZeros(micros)//>=2
+        val sub = ((micros shl 2) ushr octave).toInt() - SUB_BUCKETS//0..3
+        return ((octave - 1) * SUB_BUCKETS + sub).coerceAtMost(BUCKETS - 1)
+    }
+
+    private fun upperBound(bucket: Int): Long {
+        if (bucket < SUB_BUCKETS) return bucket.toLong() + 1
+        val octave = bucket / SUB_BUCKETS + 1
+        val sub = bucket % SUB_BUCKETS
+        return ((SUB_BUCKETS + sub + 1).toLong() shl octave) ushr 2
+    }
+}
@@ -0,0 +1,64 @@
+package com.naruto.lib.common
+
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.view.Choreographer
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * @Description 主线程执行器
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 所有任务共用一个Handler：排队的任务合并为一条消息按先进先出执行，
+ * 单次执行超过 frameBudgetMillis 后剩余任务留到下一帧（Choreographer）继续，避免连续提交大量任务时卡顿；
+ * 紧急任务通过 executeUrgent 插到消息队列最前面单独执行
+ */
+object MainThreadExecutor : Executor {
+    private val handler by lazy { Handler(Looper.getMainLooper()) }
+    private val queue = ConcurrentLinkedQueue<Runnable>()
+    private val scheduled = AtomicBoolean()
+    private val drainRunnable = Runnable { drain() }
+    private val frameCallback = Choreographer.FrameCallback { drain() }
+
+    /**
+     * 每帧最多用于执行任务的时长（毫秒）
+     */
+    @Volatile
+    var frameBudgetMillis: Long = 8
+
+    override fun execute(command: Runnable) {
+        queue.offer(command)
+        if (scheduled.compareAndSet(false, true)) handler.post(drainRunnable)
+    }
+
+    /**
+     * 插到主线程消息队列最前面执行，不参与合并
+     * @param command Runnable
+     */
+    fun executeUrgent(command: Runnable) {
+        handler.postAtFrontOfQueue(command)
+    }
+
+    /**
+     * 在主线程中执行：先进先出，超出时间预算后在下一帧继续
+     */
+    private fun drain() {
+        val deadline = SystemClock.uptimeMillis() + frameBudgetMillis
+        try {
+            while (true) {
+                val task = queue.poll() ?: break
+                task.run()
+                if (SystemClock.uptimeMillis() >= deadline) break
+            }
+        } finally {
+            if (queue.isEmpty()) {
+                scheduled.set(false)
+                //置为false之前可能有新任务入队但未能触发调度，需再次检查
+                if (queue.isNotEmpty() && scheduled.compareAndSet(false, true)) handler.post(drainRunnable)
+            } else Choreographer.getInstance().postFrameCallback(frameCallback)
+        }
+    }
+}
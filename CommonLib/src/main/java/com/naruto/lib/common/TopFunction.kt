@@ -1,11 +1,15 @@
 package com.naruto.lib.common.TopFunction
 
 import android.os.Build
+import android.os.Handler
+import android.os.Looper
 import androidx.annotation.StringRes
 import com.naruto.lib.common.Global
+import com.naruto.lib.common.coroutine.CommonScope
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
 import java.text.SimpleDateFormat
 import java.util.*
@@ -28,10 +32,32 @@ fun isDomesticRom(): Boolean {
     }
 }
 
+/**
+ * 在本模块共用的协程作用域中执行，异常交给 CrashHandler.saveExceptionInfo，见 CommonScope
+ * @param dispatcher CoroutineDispatcher 默认为 CommonScope.IO，写文件可使用 CommonScope.FILE
+ * @param name String? 协程名，调度器按此分别统计等待/执行时间
+ * @param block [@kotlin.ExtensionFunctionType] SuspendFunction1<CoroutineScope, Unit>
+ * @return Job
+ */
 fun runInCoroutine(
-    dispatcher: CoroutineDispatcher = Dispatchers.IO, block: suspend CoroutineScope.() -> Unit
-) {
-    CoroutineScope(dispatcher).launch(block = block)
+    dispatcher: CoroutineDispatcher = CommonScope.IO, name: String? = null,
+    block: suspend CoroutineScope.() -> Unit
+): Job = CommonScope.launch(
+    if (name == null) dispatcher else dispatcher + CoroutineName(name), block = block
+)
+
+/**
+ * 包装回调，使其回到调用本方法的线程执行：当前线程有Looper（如主线程）时切回该线程，
+ * 否则（普通子线程、协程线程）在执行方所在的线程回调。
+ * 调用线程的Looper须能继续处理消息，不能用于崩溃处理等随后即退出的场景
+ * @param callback Function1<T, Unit>
+ * @return Function1<T, Unit>
+ */
+fun <T> callbackOnCurrentThread(callback: (T) -> Unit): (T) -> Unit {
+    val looper = Looper.myLooper() ?: return callback
+    if (looper == Looper.getMainLooper()) return { result -> Global.runOnMainThread { callback(result) } }
+    val handler = Handler(looper)
+    return { result -> handler.post { callback(result) } }
 }
 
 fun getResString(@StringRes resId: Int) = Global.getMainModuleContext().getString(resId)
\ No newline at end of file
@@ -7,6 +7,7 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
@@ -75,7 +76,8 @@ public abstract class BaseActivity extends AppCompatActivity implements BaseView
         Configuration config = resources.getConfiguration();
         boolean needReset = false;
         if (config.fontScale != 1.0f) {
-            LogUtils.INSTANCE.i("--->fontScale=" + config.fontScale);
+            if (LogUtils.INSTANCE.isLoggable(Log.INFO))
+                LogUtils.INSTANCE.i("--->fontScale=" + config.fontScale);
             config.fontScale = 1.0f;
             needReset = true;
         }
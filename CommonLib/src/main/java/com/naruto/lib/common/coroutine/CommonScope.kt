@@ -0,0 +1,170 @@
+package com.naruto.lib.common.coroutine
+
+import android.util.Log
+import com.naruto.lib.common.CrashHandler
+import com.naruto.lib.common.utils.LogUtils
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * @Description 本模块共用的协程作用域与调度器
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 使用 SupervisorJob，单个任务失败不影响其他任务，未捕获的异常交给 CrashHandler.saveExceptionInfo；
+ * 调度器线程数有上限：IO（磁盘/MediaStore/DataStore）、CPU（计算）、FILE（单线程，按提交顺序写文件）。
+ * 线程空闲30秒后自动退出。各调度器均带统计，见 statsSnapshot、dumpStats、startStatsDump。
+ * 不会结束的监听任务须通过 launchListener 启动，否则 awaitIdle 永远无法返回true
+ */
+object CommonScope : CoroutineScope {
+    private const val TAG = "CommonScope"
+    private const val KEEP_ALIVE_SECONDS = 30L
+    private val cpuCount = Runtime.getRuntime().availableProcessors().coerceAtLeast(1)
+
+    private val job = SupervisorJob()
+    private val listenerJob = SupervisorJob()//长期运行的监听任务，不参与 awaitIdle、shutdown、cancelAll
+    private val dispatchers = ArrayList<InstrumentedDispatcher>()
+    private var statsDumpJob: Job? = null
+
+    private val exceptionHandler = CoroutineExceptionHandler { context, e ->
+        LogUtils.e(TAG, "--->uncaught exception in ${context[CoroutineName]?.name}", e)
+        CrashHandler.instance?.saveExceptionInfo(e)
+    }
+
+    /**
+     * IO调度器，最多 max(4, CPU核数*2) 个线程
+     */
+    val IO: CoroutineDispatcher = createDispatcher("IO", (cpuCount * 2).coerceAtLeast(4))
+
+    /**
+     * 计算调度器，最多 CPU核数 个线程
+     */
+    val CPU: CoroutineDispatcher = createDispatcher("CPU", cpuCount)
+
+    /**
+     * 单线程调度器，任务按提交顺序依次执行，用于写文件
+     */
+    val FILE: CoroutineDispatcher = createDispatcher("FILE", 1)
+
+    override val coroutineContext: CoroutineContext =
+        job + IO + exceptionHandler + CoroutineName("CommonScope")
+
+    /**
+     * 启动长期运行的监听任务（如收集DataStore的Flow），与普通任务分开管理：
+     * 不计入 activeCount，awaitIdle、shutdown、cancelAll 不会等待或取消它，需要时通过返回的Job取消
+     * @param name String 协程名
+     * @param dispatcher CoroutineDispatcher
+     * @return Job
+     */
+    fun launchListener(
+        name: String, dispatcher: CoroutineDispatcher = IO, block: suspend CoroutineScope.() -> Unit
+    ): Job = launch(listenerJob + dispatcher + CoroutineName(name), block = block)
+
+    /**
+     * 正在执行的任务数（不含监听任务）
+     */
+    val activeCount: Int get() = job.children.count()
+
+    /**
+     * 等待当前所有任务完成，不可在本作用域的任务中调用（会等待自身直到超时）
+     * @param timeoutMillis Long
+     * @return Boolean 是否在超时前全部完成
+     */
+    suspend fun awaitIdle(timeoutMillis: Long): Boolean = withTimeoutOrNull(timeoutMillis) {
+        while (true) {
+            val children = job.children.toList()
+            if (children.isEmpty()) break
+            children.forEach { it.join() }
+        }
+        true
+    } ?: false
+
+    /**
+     * 取消当前所有任务（作用域本身仍可继续使用）
+     */
+    fun cancelAll() {
+        job.cancelChildren()
+    }
+
+    /**
+     * 等待当前任务完成，超时后取消剩余任务
+     * @param timeoutMillis Long
+     * @return Boolean 是否在超时前全部完成
+     */
+    suspend fun shutdown(timeoutMillis: Long): Boolean =
+        awaitIdle(timeoutMillis).also { if (!it) cancelAll() }
+
+    /**
+     * 获取各调度器的统计（排队数、执行中的任务数、按协程名统计的等待/执行时间）
+     * @param reset Boolean 是否在获取后清零累计值
+     * @return List<InstrumentedDispatcher.Snapshot>
+     */
+    fun statsSnapshot(reset: Boolean = false): List<InstrumentedDispatcher.Snapshot> =
+        dispatchers.map { it.snapshot(reset) }
+
+    /**
+     * 通过 LogUtils 输出各调度器的统计（logfmt格式）
+     * @param reset Boolean 是否在输出后清零累计值
+     */
+    fun dumpStats(reset: Boolean = false) {
+        statsSnapshot(reset).forEach { snapshot ->
+            LogUtils.kv(TAG, Log.INFO, "dispatcher").kv("name", snapshot.name)
+                .kv("queued", snapshot.queued).kv("in_flight", snapshot.inFlight)
+                .kv("max_queued", snapshot.maxQueued).log()
+            snapshot.labels.forEach {
+                LogUtils.kv(TAG, Log.INFO, "dispatcher_label").kv("name", snapshot.name)
+                    .kv("label", it.label).kv("count", it.count)
+                    .kv("avg_wait_ms", it.avgWaitMillis).kv("max_wait_ms", it.maxWaitMillis)
+                    .kv("avg_run_ms", it.avgRunMillis).kv("max_run_ms", it.maxRunMillis).log()
+            }
+        }
+    }
+
+    /**
+     * 定时输出统计，每次输出后清零累计值；不计入 activeCount，也不受 awaitIdle、cancelAll 影响，见 launchListener
+     * @param intervalMillis Long
+     */
+    @Synchronized
+    fun startStatsDump(intervalMillis: Long = 60_000) {
+        statsDumpJob?.cancel()
+        statsDumpJob = launchListener("CommonScope-stats") {
+            while (isActive) {
+                delay(intervalMillis)
+                dumpStats(true)
+            }
+        }
+    }
+
+    @Synchronized
+    fun stopStatsDump() {
+        statsDumpJob?.cancel()
+        statsDumpJob = null
+    }
+
+    private fun createDispatcher(name: String, threads: Int): CoroutineDispatcher {
+        val counter = AtomicInteger()
+        val factory = ThreadFactory { r ->
+            Thread(r, "Common$name-${counter.incrementAndGet()}").apply { isDaemon = true }
+        }
+        val executor = ThreadPoolExecutor(
+            threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, LinkedBlockingQueue(), factory
+        ).apply { allowCoreThreadTimeOut(true) }
+        return InstrumentedDispatcher(name, executor.asCoroutineDispatcher())
+            .also { dispatchers.add(it) }
+    }
+}
@@ -0,0 +1,128 @@
+package com.naruto.lib.common.coroutine
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineName
+import kotlinx.coroutines.Runnable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * @Description 带统计的调度器
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 记录排队数、执行中的任务数、从提交到开始执行的等待时间与执行时间，
+ * 并按协程名（CoroutineName，见 runInCoroutine 的 name 参数）分别统计；协程名最多统计 MAX_LABELS 个，其余归入"other"
+ */
+class InstrumentedDispatcher internal constructor(
+    val name: String, private val delegate: CoroutineDispatcher
+) : CoroutineDispatcher() {
+    private val queued = AtomicInteger()
+    private val inFlight = AtomicInteger()
+    private val maxQueued = AtomicInteger()
+    private val labels = ConcurrentHashMap<String, LabelStats>()
+
+    override fun isDispatchNeeded(context: CoroutineContext): Boolean = delegate.isDispatchNeeded(context)
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        val stats = statsOf(context[CoroutineName]?.name ?: UNNAMED)
+        val depth = queued.incrementAndGet()
+        while (true) {
+            val max = maxQueued.get()
+            if (depth <= max || maxQueued.compareAndSet(max, depth)) break
+        }
+        val submitTime = System.nanoTime()
+        delegate.dispatch(context, Runnable {
+            val start = System.nanoTime()
+            queued.decrementAndGet()
+            inFlight.incrementAndGet()
+            try {
+                block.run()
+            } finally {
+                inFlight.decrementAndGet()
+                stats.record(start - submitTime, System.nanoTime() - start)
+            }
+        })
+    }
+
+    private fun statsOf(label: String): LabelStats = labels[label]
+        ?: if (labels.size >= MAX_LABELS) labels.getOrPut(OTHER) { LabelStats() }
+        else labels.getOrPut(label) { LabelStats() }
+
+    /**
+     * 获取当前统计
+     * @param reset Boolean 是否在获取后清零各协程名的累计值（排队数、执行中的任务数不受影响）
+     */
+    fun snapshot(reset: Boolean = false): Snapshot {
+        val labelSnapshots = labels.entries.map { (label, stats) -> stats.snapshot(label, reset) }
+            .sortedByDescending { it.totalRunMillis }
+        return Snapshot(
+            name, queued.get(), inFlight.get(),
+            if (reset) maxQueued.getAndSet(queued.get()) else maxQueued.get(), labelSnapshots
+        )
+    }
+
+    override fun toString(): String = "InstrumentedDispatcher($name)"
+
+    /**
+     * @param queued Int 排队中的任务数
+     * @param inFlight Int 执行中的任务数
+     * @param maxQueued Int 排队数峰值
+     */
+    class Snapshot(
+        val name: String, val queued: Int, val inFlight: Int, val maxQueued: Int,
+        val labels: List<LabelSnapshot>
+    )
+
+    /**
+     * 时间单位均为毫秒；一个协程每次挂起后恢复都计为一次执行
+     */
+    class LabelSnapshot(
+        val label: String, val count: Long,
+        val totalWaitMillis: Double, val maxWaitMillis: Double,
+        val totalRunMillis: Double, val maxRunMillis: Double
+    ) {
+        val avgWaitMillis: Double get() = if (count == 0L) 0.0 else totalWaitMillis / count
+        val avgRunMillis: Double get() = if (count == 0L) 0.0 else totalRunMillis / count
+    }
+
+    private class LabelStats {
+        private val count = AtomicLong()
+        private val totalWait = AtomicLong()
+        private val maxWait = AtomicLong()
+        private val totalRun = AtomicLong()
+        private val maxRun = AtomicLong()
+
+        fun record(waitNanos: Long, runNanos: Long) {
+            count.incrementAndGet()
+            totalWait.addAndGet(waitNanos)
+            totalRun.addAndGet(runNanos)
+            updateMax(maxWait, waitNanos)
+            updateMax(maxRun, runNanos)
+        }
+
+        fun snapshot(label: String, reset: Boolean): LabelSnapshot = LabelSnapshot(
+            label, read(count, reset), read(totalWait, reset) / NANOS_PER_MILLI,
+            read(maxWait, reset) / NANOS_PER_MILLI, read(totalRun, reset) / NANOS_PER_MILLI,
+            read(maxRun, reset) / NANOS_PER_MILLI
+        )
+
+        private fun read(value: AtomicLong, reset: Boolean): Long =
+            if (reset) value.getAndSet(0) else value.get()
+
+        private fun updateMax(max: AtomicLong, value: Long) {
+            while (true) {
+                val current = max.get()
+                if (value <= current || max.compareAndSet(current, value)) return
+            }
+        }
+    }
+
+    companion object {
+        private const val UNNAMED = "unnamed"
+        private const val OTHER = "other"
+        private const val MAX_LABELS = 64
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+}
@@ -0,0 +1,91 @@
+package com.naruto.lib.common.crash
+
+import android.util.Log
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+
+/**
+ * @Description 连续崩溃记录
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 最近 MAX_RECORDS 次崩溃的时间保存在私有目录的定长文件中（每条8字节，0表示空位），
+ * 初始化时（prepare）打开文件并读入内存，崩溃时只覆盖最旧的一条（一次8字节的写入），不重写整个文件、不fsync
+ * （进程退出不影响已写入的数据），崩溃线程同步调用，不依赖协程与DataStore
+ */
+internal class CrashLoopTracker(private val file: File) {
+    private var raf: RandomAccessFile? = null
+    private val times = LongArray(MAX_RECORDS)
+
+    /**
+     * 打开记录文件并读入内存，在 CrashHandler.init 中调用；未调用时首次使用时打开
+     */
+    @Synchronized
+    fun prepare() {
+        if (raf != null) return
+        kotlin.runCatching {
+            file.parentFile?.mkdirs()
+            val raf = RandomAccessFile(file, "rw")
+            val bytes = ByteArray(FILE_SIZE)
+            val length = raf.length().coerceAtMost(FILE_SIZE.toLong()).toInt()
+            raf.readFully(bytes, 0, length - length % RECORD_SIZE)
+            val buffer = ByteBuffer.wrap(bytes)
+            for (i in times.indices) times[i] = buffer.long
+            raf.setLength(FILE_SIZE.toLong())
+            this.raf = raf
+        }.onFailure { Log.e(TAG, "--->open crash times failed", it) }
+    }
+
+    /**
+     * 记录一次崩溃
+     * @return Int 包含本次在内，window 时长内的崩溃次数
+     */
+    @Synchronized
+    fun recordCrash(time: Long, window: Long): Int {
+        prepare()
+        var slot = 0
+        for (i in times.indices) if (times[i] < times[slot]) slot = i
+        times[slot] = time
+        writeSlot(slot)
+        return count(time, window)
+    }
+
+    /**
+     * window 时长内的崩溃次数
+     */
+    @Synchronized
+    fun recentCrashCount(now: Long, window: Long): Int {
+        prepare()
+        return count(now, window)
+    }
+
+    /**
+     * 清除 window 时长之前的记录
+     */
+    @Synchronized
+    fun prune(now: Long, window: Long) {
+        prepare()
+        for (i in times.indices) {
+            if (times[i] == 0L || now - times[i] in 0..window) continue
+            times[i] = 0
+            writeSlot(i)
+        }
+    }
+
+    private fun count(now: Long, window: Long): Int = times.count { it != 0L && now - it in 0..window }
+
+    private fun writeSlot(slot: Int) {
+        val raf = raf ?: return
+        kotlin.runCatching {
+            raf.seek(slot.toLong() * RECORD_SIZE)
+            raf.write(ByteBuffer.allocate(RECORD_SIZE).putLong(times[slot]).array())
+        }.onFailure { Log.e(TAG, "--->write crash times failed", it) }
+    }
+
+    companion object {
+        private const val TAG = "CrashLoopTracker"
+        private const val MAX_RECORDS = 16
+        private const val RECORD_SIZE = 8
+        private const val FILE_SIZE = MAX_RECORDS * RECORD_SIZE
+    }
+}
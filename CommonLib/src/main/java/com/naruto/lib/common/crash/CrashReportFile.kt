@@ -0,0 +1,83 @@
+package com.naruto.lib.common.crash
+
+import android.util.Log
+import java.io.File
+import java.io.FileOutputStream
+
+/**
+ * @Description 崩溃报告直写文件
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 初始化时在应用私有目录预先创建并打开"crash/pending"，崩溃时由崩溃线程直接写入该文件，
+ * 不需要存储权限、不经过MediaStore和协程，且有时间上限；
+ * 下次启动时将上次写入的报告改名为"<崩溃时间>.txt"留待转存到公共目录；
+ * 非崩溃场景（如卡顿报告）通过 save 直接保存为"<时间>.txt"，不需要 prepare
+ */
+internal class CrashReportFile(private val dir: File) {
+    private var stream: FileOutputStream? = null
+
+    /**
+     * 保存上次的报告并重新打开待写入文件，在 CrashHandler.init 中调用
+     */
+    fun prepare() {
+        kotlin.runCatching {
+            dir.mkdirs()
+            val pending = File(dir, PENDING_FILE_NAME)
+            if (pending.length() > 0) pending.renameTo(File(dir, "${pending.lastModified()}$REPORT_SUFFIX"))
+            stream = FileOutputStream(pending, false)
+        }.onFailure { Log.e(TAG, "--->prepare crash file failed", it) }
+    }
+
+    val isPrepared: Boolean get() = stream != null
+
+    /**
+     * 写入报告，超出时间上限时放弃剩余部分
+     * @param bytes ByteArray
+     * @param budgetMillis Long 时间上限
+     * @return Boolean 是否完整写入
+     */
+    @Synchronized
+    fun write(bytes: ByteArray, budgetMillis: Long): Boolean {
+        val stream = stream ?: return false
+        this.stream = null//只写一次，其他线程随后的崩溃交给 CrashHandler 的常规路径
+        val deadline = System.nanoTime() + budgetMillis * 1_000_000
+        return kotlin.runCatching {
+            var offset = 0
+            while (offset < bytes.size) {
+                if (System.nanoTime() > deadline) return false
+                val count = minOf(CHUNK_SIZE, bytes.size - offset)
+                stream.write(bytes, offset, count)
+                offset += count
+            }
+            if (System.nanoTime() < deadline) stream.fd.sync()
+            true
+        }.getOrDefault(false)
+    }
+
+    /**
+     * 直接保存一份报告（先写临时文件再改名，转存时不会读到写了一半的文件）
+     * @return Boolean 是否保存成功
+     */
+    fun save(bytes: ByteArray): Boolean = kotlin.runCatching {
+        dir.mkdirs()
+        val time = System.currentTimeMillis()
+        val tmp = File(dir, "$time$TMP_SUFFIX")
+        FileOutputStream(tmp).use { it.write(bytes) }
+        tmp.renameTo(File(dir, "$time$REPORT_SUFFIX"))
+    }.onFailure { Log.e(TAG, "--->save report failed", it) }.getOrDefault(false)
+
+    /**
+     * 尚未转存的报告，按时间排序
+     * @return List<File>
+     */
+    fun listReports(): List<File> =
+        dir.listFiles { file -> file.name.endsWith(REPORT_SUFFIX) }?.sortedBy { it.name } ?: emptyList()
+
+    companion object {
+        private const val TAG = "CrashReportFile"
+        private const val PENDING_FILE_NAME = "pending"
+        private const val REPORT_SUFFIX = ".txt"
+        private const val TMP_SUFFIX = ".tmp"
+        private const val CHUNK_SIZE = 8 * 1024
+    }
+}
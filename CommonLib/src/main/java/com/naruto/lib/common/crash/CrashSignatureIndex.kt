@@ -0,0 +1,134 @@
+package com.naruto.lib.common.crash
+
+import android.util.Log
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+
+/**
+ * @Description 崩溃签名索引
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 签名由异常链中各异常的类名及其前 MAX_FRAMES 个调用栈（类名.方法名，去掉行号与匿名类/lambda序号）计算得出，
+ * 同一问题在不同版本、不同消息下签名相同。
+ * 索引文件为定长记录：签名(8) + 次数(4) + 首次时间(8) + 最近时间(8)，最多保存 MAX_ENTRIES 条，超出时覆盖最久未出现的。
+ * 初始化时（prepare）打开文件并读入内存，记录时只原地覆盖对应的一条（一次28字节的写入），崩溃线程上的耗时固定
+ */
+internal class CrashSignatureIndex(private val file: File) {
+    private var raf: RandomAccessFile? = null
+    private val entries = ArrayList<Entry>()//下标即在文件中的位置
+
+    /**
+     * 打开索引文件并读入内存，在 CrashHandler.init 中调用；未调用时首次使用时打开
+     */
+    @Synchronized
+    fun prepare() {
+        if (raf != null) return
+        kotlin.runCatching {
+            file.parentFile?.mkdirs()
+            val raf = RandomAccessFile(file, "rw")
+            val count = (raf.length() / ENTRY_SIZE).toInt().coerceAtMost(MAX_ENTRIES)
+            val bytes = ByteArray(count * ENTRY_SIZE)
+            raf.readFully(bytes)
+            val buffer = ByteBuffer.wrap(bytes)
+            entries.clear()
+            repeat(count) { entries.add(Entry(buffer.long, buffer.int, buffer.long, buffer.long)) }
+            raf.setLength(bytes.size.toLong())
+            this.raf = raf
+        }.onFailure { Log.e(TAG, "--->load crash index failed", it) }
+    }
+
+    /**
+     * 记录一次出现
+     * @return Entry 更新后的记录
+     */
+    @Synchronized
+    fun record(signature: Long, time: Long): Entry {
+        prepare()
+        var slot = entries.indexOfFirst { it.signature == signature }
+        val entry: Entry
+        if (slot >= 0) {
+            entry = entries[slot].apply { count++;lastSeen = time }
+        } else {
+            entry = Entry(signature, 1, time, time)
+            if (entries.size < MAX_ENTRIES) {
+                slot = entries.size
+                entries.add(entry)
+            } else {
+                slot = entries.indices.minBy { entries[it].lastSeen }
+                entries[slot] = entry
+            }
+        }
+        write(slot, entry)
+        return entry
+    }
+
+    @Synchronized
+    fun entries(): List<Entry> {
+        prepare()
+        return ArrayList(entries)
+    }
+
+    private fun write(slot: Int, entry: Entry) {
+        val raf = raf ?: return
+        kotlin.runCatching {
+            val buffer = ByteBuffer.allocate(ENTRY_SIZE)
+                .putLong(entry.signature).putInt(entry.count).putLong(entry.firstSeen).putLong(entry.lastSeen)
+            raf.seek(slot.toLong() * ENTRY_SIZE)
+            raf.write(buffer.array())
+        }.onFailure { Log.e(TAG, "--->save crash index failed", it) }
+    }
+
+    class Entry(val signature: Long, var count: Int, val firstSeen: Long, var lastSeen: Long)
+
+    companion object {
+        private const val TAG = "CrashSignatureIndex"
+        private const val ENTRY_SIZE = 28
+        private const val MAX_ENTRIES = 256
+        private const val MAX_FRAMES = 8
+        private val SYNTHETIC_SUFFIX = Regex("""\$\d+|(?<=Lambda)\d+""")//匿名类、lambda的序号
+
+        /**
+         * 计算签名（FNV-1a 64位）
+         * @param type String 类型（crash/exception），不同类型分开计数
+         * @param e Throwable
+         * @return Long
+         */
+        fun signatureOf(type: String, e: Throwable): Long {
+            var hash = mix(FNV_OFFSET, type)
+            var t: Throwable? = e
+            var depth = 0
+            while (t != null && depth++ < 16) {//防止异常链成环
+                hash = mix(hash, t.javaClass.name)
+                hash = mixFrames(hash, t.stackTrace.asList())
+                t = t.cause
+            }
+            return hash
+        }
+
+        /**
+         * 根据调用栈计算签名（如主线程卡顿时最常见的调用栈），规则同 signatureOf(String, Throwable)
+         */
+        fun signatureOf(type: String, stack: List<StackTraceElement>): Long =
+            mixFrames(mix(FNV_OFFSET, type), stack)
+
+        private fun mixFrames(hash: Long, stack: List<StackTraceElement>): Long {
+            var h = hash
+            stack.take(MAX_FRAMES).forEach {
+                h = mix(h, normalize(it.className));h = mix(h, normalize(it.methodName))
+            }
+            return h
+        }
+
+        private fun mix(hash: Long, s: String): Long {
+            var h = hash
+            for (c in s) h = (h xor c.code.toLong()) * FNV_PRIME
+            return (h xor '|'.code.toLong()) * FNV_PRIME
+        }
+
+        private fun normalize(name: String): String = name.replace(SYNTHETIC_SUFFIX, "")
+
+        private const val FNV_OFFSET = -0x340d631b7bdddcdbL
+        private const val FNV_PRIME = 0x100000001b3L
+    }
+}
@@ -0,0 +1,194 @@
+package com.naruto.lib.common.log
+
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStreamWriter
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * @Description 二进制日志格式
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 文件由若干自包含的数据块组成，每次写入为一个数据块：
+ * 块头：0x7F + 魔数(4字节) + 版本(1字节) + 时区偏移(zigzag varint，毫秒) + 起始时间(varint，毫秒)
+ * 字符串：0x01 + 长度(varint) + UTF-8，按出现顺序从1开始编号，块内有效
+ * 记录：0x02 + 与上一条的时间差(zigzag varint) + 级别(1字节) + tag编号(varint) + 调用位置编号(varint，0表示无) + 内容长度(varint) + UTF-8
+ * 本文件不依赖Android API，解码器可在普通JVM上运行
+ */
+object BinaryLogFormat {
+    const val FILE_SUFFIX = ".blog"
+    internal const val TYPE_BLOCK = 0x7F
+    internal const val TYPE_STRING = 0x01
+    internal const val TYPE_RECORD = 0x02
+    internal const val MAGIC = 0x4E42_4C47//"NBLG"
+    internal const val VERSION = 1
+
+    internal fun zigzag(value: Long): Long = (value shl 1) xor (value shr 63)
+
+    internal fun unzigzag(value: Long): Long = (value ushr 1) xor -(value and 1)
+}
+
+/**
+ * @Description 二进制日志编码器（非线程安全，仅在写日志线程使用）
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note
+ */
+internal class BinaryLogEncoder {
+    private val out = ByteArrayOutputStream(4096)
+    private val strings = HashMap<String, Int>()
+    private var lastTime = 0L
+
+    val isEmpty: Boolean get() = out.size() == 0
+
+    val size: Int get() = out.size()
+
+    fun encode(record: LogRecord) {
+        if (isEmpty) beginBlock(record.time)
+        val tagId = intern(record.tag)
+        val siteId = record.site?.let { intern(it) } ?: 0
+        out.write(BinaryLogFormat.TYPE_RECORD)
+        writeVarLong(BinaryLogFormat.zigzag(record.time - lastTime))
+        lastTime = record.time
+        out.write(record.level)
+        writeVarLong(tagId.toLong())
+        writeVarLong(siteId.toLong())
+        writeString(record.message)
+    }
+
+    /**
+     * 结束当前数据块
+     * @return ByteArray 数据块内容
+     */
+    fun finish(): ByteArray = out.toByteArray().also {
+        out.reset()
+        strings.clear()
+    }
+
+    private fun beginBlock(time: Long) {
+        out.write(BinaryLogFormat.TYPE_BLOCK)
+        BinaryLogFormat.MAGIC.let {
+            out.write(it ushr 24);out.write(it ushr 16);out.write(it ushr 8);out.write(it)
+        }
+        out.write(BinaryLogFormat.VERSION)
+        writeVarLong(BinaryLogFormat.zigzag(TimeZone.getDefault().getOffset(time).toLong()))
+        writeVarLong(time)
+        lastTime = time
+    }
+
+    private fun intern(value: String): Int = strings[value] ?: (strings.size + 1).also {
+        strings[value] = it
+        out.write(BinaryLogFormat.TYPE_STRING)
+        writeString(value)
+    }
+
+    private fun writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeVarLong(bytes.size.toLong())
+        out.write(bytes, 0, bytes.size)
+    }
+
+    private fun writeVarLong(value: Long) {
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            out.write(((v and 0x7F) or 0x80).toInt())
+            v = v ushr 7
+        }
+        out.write(v.toInt())
+    }
+}
+
+/**
+ * @Description 二进制日志解码器，将二进制日志还原为文本格式：yyyy-MM-dd HH:mm:ss:SSS [调用位置]内容
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 命令行用法：java -cp <classes.jar>:<kotlin-stdlib.jar> com.naruto.lib.common.log.BinaryLogDecoder <输入文件> [输出文件]
+ */
+object BinaryLogDecoder {
+    private const val DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss:SSS"
+
+    /**
+     * 解码
+     * @param input InputStream
+     * @param out Appendable
+     */
+    fun decode(input: InputStream, out: Appendable) {
+        val data = DataInputStream(BufferedInputStream(input))
+        val strings = ArrayList<String>()
+        var time = 0L
+        var format: SimpleDateFormat? = null
+        while (true) {
+            when (val type = data.read()) {
+                -1 -> break
+                BinaryLogFormat.TYPE_BLOCK -> {
+                    if (data.readInt() != BinaryLogFormat.MAGIC) throw IOException("Bad block magic")
+                    val version = data.readUnsignedByte()
+                    if (version > BinaryLogFormat.VERSION)
+                        throw IOException("Unsupported version: $version")
+                    val offset = BinaryLogFormat.unzigzag(readVarLong(data))
+                    time = readVarLong(data)
+                    strings.clear()
+                    format = SimpleDateFormat(DATETIME_FORMAT, Locale.US).apply {
+                        timeZone = SimpleTimeZone(offset.toInt(), "LOG")
+                    }
+                }
+
+                BinaryLogFormat.TYPE_STRING -> strings.add(readString(data))
+                BinaryLogFormat.TYPE_RECORD -> {
+                    format ?: throw IOException("Record before block header")
+                    time += BinaryLogFormat.unzigzag(readVarLong(data))
+                    data.readUnsignedByte()//级别，文本格式中不输出
+                    readVarLong(data)//tag，文本格式中不输出
+                    val siteId = readVarLong(data).toInt()
+                    val message = readString(data)
+                    out.append(format.format(Date(time))).append(' ')
+                    if (siteId > 0) out.append('[').append(strings[siteId - 1]).append(']')
+                    out.append(message).append('\n')
+                }
+
+                else -> throw IOException("Unknown entry type: $type")
+            }
+        }
+    }
+
+    fun decode(bytes: ByteArray): String =
+        StringBuilder().also { decode(ByteArrayInputStream(bytes), it) }.toString()
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        if (args.isEmpty()) {
+            System.err.println("Usage: BinaryLogDecoder <input.blog> [output.txt]")
+            return
+        }
+        File(args[0]).inputStream().use { input ->
+            val writer = args.getOrNull(1)?.let { File(it).writer() } ?: OutputStreamWriter(System.out)
+            writer.use { decode(input, it) }
+        }
+    }
+
+    private fun readString(data: DataInputStream): String {
+        val bytes = ByteArray(readVarLong(data).toInt())
+        data.readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun readVarLong(data: DataInputStream): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = data.read()
+            if (b < 0) throw EOFException()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+}
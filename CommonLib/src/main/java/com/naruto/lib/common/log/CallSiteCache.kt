@@ -0,0 +1,43 @@
+package com.naruto.lib.common.log
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * @Description 调用位置缓存
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 以固定大小的直接映射表缓存StackTraceElement到格式化字符串的映射，
+ * 同一调用位置重复打印时无需再次拼接字符串；冲突时直接覆盖，内存占用有上限。
+ * 只省去格式化，取得StackTraceElement所需的调用栈遍历（Throwable().stackTrace）每次仍会执行，
+ * 热路径上要避免遍历，需将 LogUtils.callerLocationMode 设为 SAMPLED/WARN_ERROR/OFF
+ */
+internal object CallSiteCache {
+    private const val CAPACITY = 512//必须为2的幂
+    private val table = AtomicReferenceArray<Entry>(CAPACITY)
+
+    /**
+     * 获取调用位置的格式化字符串，格式同StackTraceElement.toString()
+     * @param element StackTraceElement
+     * @return String
+     */
+    fun format(element: StackTraceElement): String {
+        val hash = hash(element)
+        val index = hash and (CAPACITY - 1)
+        table.get(index)?.takeIf { it.matches(hash, element) }?.let { return it.text }
+        return element.toString().also { table.set(index, Entry(hash, element, it)) }
+    }
+
+    private fun hash(element: StackTraceElement): Int {
+        var h = element.className.hashCode()
+        h = 31 * h + element.methodName.hashCode()
+        h = 31 * h + element.lineNumber
+        return h xor (h ushr 16)
+    }
+
+    private class Entry(val hash: Int, val element: StackTraceElement, val text: String) {
+        fun matches(hash: Int, other: StackTraceElement): Boolean = this.hash == hash
+                && element.lineNumber == other.lineNumber
+                && element.methodName == other.methodName
+                && element.className == other.className
+    }
+}
@@ -0,0 +1,327 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.utils.FileUtil
+import com.naruto.lib.common.utils.LogUtils
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeoutOrNull
+import java.io.File
+import java.io.OutputStream
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * @Description 日志文件输出端
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 将记录格式化并写入"log/<date>.txt"（超出大小上限时滚动，见 LogFileRotator）；
+ * 启用内存映射文件时，每批记录先同步到映射文件，进程意外退出后于下次启动时恢复；
+ * 启用二进制格式时（不含映射文件模式）写入"log/<date>.blog"，格式见 BinaryLogFormat；
+ * 按数据量/时间间隔自动写入，或由 flush 触发，当前日志文件的写入流会一直保持打开。
+ * 仅在非调试模式且 LogUtils.documentable 为true时启用，首次启用时才打开映射文件；安全模式下不使用映射文件
+ */
+class FileLogSink internal constructor(private val mmapSize: Int, private val binary: Boolean) :
+    LogSink() {
+    private val failedChunks = ConcurrentLinkedQueue<Pair<String, ByteArray>>()//写入失败待重试的数据(文件名,数据)
+
+    //以下仅在分发线程访问
+    private val formatter = LogLineFormatter(false)
+    private val dateFormat = SimpleDateFormat(DATE_FORMAT, Locale.getDefault())
+    private val pending = linkedMapOf<String, StringBuilder>()
+    private val encoders = linkedMapOf<String, BinaryLogEncoder>()
+    private var dayStart = 0L
+    private var dayEnd = 0L
+    private var day = ""
+    private var started = false
+    private var mmap: MmapLogFile? = null
+    private val rotator = LogFileRotator()
+    private var lastFlushTime = System.currentTimeMillis()
+    private var stream: OutputStream? = null//当前日志文件的写入流，长期持有
+    private var streamFileName: String? = null
+
+    override fun isEnabled(): Boolean = !Global.isDebug && LogUtils.documentable
+
+    override fun write(record: LogRecord) {
+        ensureStarted()
+        appendRecord(record)
+    }
+
+    override fun onBatchEnd() {
+        if (!started) return
+        val mmap = mmap
+        if (mmap != null) syncMmap(mmap, false)
+        else {
+            val size = unflushedSize()
+            if (size >= MAX_PENDING_BYTES || isAutoFlushDue(size)) writeAll()
+        }
+    }
+
+    override fun flush() {
+        ensureStarted()
+        val mmap = mmap
+        if (mmap != null) syncMmap(mmap, true) else writeAll()
+    }
+
+    override fun wakeDelayMillis(): Long {
+        val autoFlush = LogUtils.autoFlushBytes > 0 || LogUtils.autoFlushIntervalMillis > 0
+        return if (started && autoFlush && unflushedSize() > 0) AUTO_FLUSH_TICK_MILLIS else 0
+    }
+
+    override fun onStop() {
+        closeStream()
+        rotator.releaseClosed(null)
+    }
+
+    /**
+     * 首次启用时恢复上次进程遗留的数据、建立映射并清理旧文件
+     */
+    private fun ensureStarted() {
+        if (started) return
+        started = true
+        kotlin.runCatching { openMmap() }.onFailure { Log.e(TAG, "--->open mmap failed", it) }
+        rotator.enforceRetentionAsync(dateFormat.format(Date()))
+    }
+
+    /**
+     * 是否达到自动写入条件（数据量或时间间隔）
+     * @param size Long 未写入文件的数据量
+     */
+    private fun isAutoFlushDue(size: Long): Boolean {
+        if (size <= 0) return false
+        val bytes = LogUtils.autoFlushBytes
+        val interval = LogUtils.autoFlushIntervalMillis
+        return (bytes > 0 && size >= bytes)
+                || (interval > 0 && System.currentTimeMillis() - lastFlushTime >= interval)
+    }
+
+    private fun unflushedSize(): Long {
+        var size = 0L
+        pending.values.forEach { size += it.length }
+        encoders.values.forEach { size += it.size }
+        failedChunks.forEach { size += it.second.size }
+        mmap?.let { size += it.length }
+        return size
+    }
+
+    private fun writeAll() {
+        retryFailedChunks()
+        writePending()
+        lastFlushTime = System.currentTimeMillis()
+    }
+
+    private fun writePending() {
+        for ((date, sb) in pending) {
+            if (sb.isEmpty()) continue
+            val bytes = sb.toString().toByteArray()
+            sb.setLength(0)
+            writeSegment(date, TEXT_SUFFIX, bytes)
+        }
+        for ((date, encoder) in encoders) {
+            if (!encoder.isEmpty) writeSegment(date, BinaryLogFormat.FILE_SUFFIX, encoder.finish())
+        }
+        pending.keys.retainAll { it == day }//过期日期的缓存不再需要
+        encoders.keys.retainAll { it == day }
+        rotator.retainDate(day, streamFileName)
+    }
+
+    /**
+     * 恢复上次进程遗留的数据并建立映射，遗留数据写入失败时保留在映射文件中，之后随映射文件一起写入
+     */
+    private fun openMmap() {
+        //安全模式下不恢复也不覆盖遗留数据，留到下次正常启动时处理；本进程不使用映射文件
+        if (Global.isSafeMode) return
+        val file = getMmapFile()
+        if (mmapSize > 0) {
+            mmap = MmapLogFile(file, mmapSize).also { flushMmap(it) }
+            return
+        }
+        val data = MmapLogFile.recover(file)
+        //写入失败时保留文件，下次启动再恢复
+        if (data == null || writeLines(data, data.size) == completeLength(data, data.size)) file.delete()
+    }
+
+    /**
+     * 将缓存的记录同步到映射文件
+     * @param flushFile Boolean 是否同时将映射文件中的数据写入日志文件
+     */
+    private fun syncMmap(mmap: MmapLogFile, flushFile: Boolean) {
+        for ((date, sb) in pending) {
+            if (sb.isEmpty()) continue
+            val bytes = sb.toString().toByteArray()
+            sb.setLength(0)
+            if (mmap.append(bytes)) continue
+            flushMmap(mmap)//空间不足，先转存
+            if (!mmap.append(bytes)) writeSegment(date, TEXT_SUFFIX, bytes)
+        }
+        pending.keys.retainAll { it == day }
+        if (flushFile || isAutoFlushDue(mmap.length.toLong())) {
+            retryFailedChunks()
+            flushMmap(mmap)
+        }
+    }
+
+    /**
+     * 将映射文件中的完整行写入日志文件，只丢弃已成功写入的部分，
+     * 写入失败的数据留在映射文件中，下次写入时重试（不转入内存中的 failedChunks）
+     */
+    private fun flushMmap(mmap: MmapLogFile) {
+        lastFlushTime = System.currentTimeMillis()
+        if (mmap.isEmpty) return
+        val data = mmap.readAll()
+        mmap.discard(writeLines(data, data.size))
+        rotator.retainDate(day, streamFileName)
+    }
+
+    /**
+     * 按行首日期将完整的行（以'\n'结尾）写入对应日期的日志文件，遇到写入失败即停止
+     * @return Int 已成功写入的字节数（从开头算起）
+     */
+    private fun writeLines(data: ByteArray, length: Int): Int {
+        val end = completeLength(data, length)//最后一个'\n'之后可能是不完整的字符，不写入
+        var date = day.ifEmpty { dateFormat.format(Date()) }
+        var runStart = 0
+        var pos = 0
+        while (pos < end) {
+            val lineDate = datePrefix(data, pos)
+            if (lineDate != null && lineDate != date) {
+                if (pos > runStart) {
+                    if (!tryWriteSegment(date, data.copyOfRange(runStart, pos))) return runStart
+                    runStart = pos
+                }
+                date = lineDate
+            }
+            while (pos < end && data[pos] != NEW_LINE) pos++
+            pos++
+        }
+        if (end > runStart && !tryWriteSegment(date, data.copyOfRange(runStart, end))) return runStart
+        return end
+    }
+
+    /**
+     * 到最后一个'\n'（含）为止的长度
+     */
+    private fun completeLength(data: ByteArray, length: Int): Int {
+        for (i in length - 1 downTo 0) if (data[i] == NEW_LINE) return i + 1
+        return 0
+    }
+
+    /**
+     * 行首为"yyyy-MM-dd "时返回该日期
+     */
+    private fun datePrefix(data: ByteArray, start: Int): String? {
+        val len = DATE_FORMAT.length
+        if (data.size < start + len + 1 || data[start + len] != ' '.code.toByte()) return null
+        for (i in 0 until len) {
+            val c = data[start + i].toInt().toChar()
+            if (if (i == 4 || i == 7) c != '-' else c !in '0'..'9') return null
+        }
+        return String(data, start, len, Charsets.US_ASCII)
+    }
+
+    private fun retryFailedChunks() {
+        var count = failedChunks.size
+        while (count-- > 0) {
+            val (fileName, bytes) = failedChunks.poll() ?: break
+            writeFile(fileName, bytes)
+        }
+    }
+
+    private fun writeSegment(date: String, suffix: String, bytes: ByteArray) {
+        writeFile(rotator.fileNameFor(date, suffix, bytes.size), bytes)
+    }
+
+    private fun tryWriteSegment(date: String, bytes: ByteArray): Boolean =
+        tryWriteFile(rotator.fileNameFor(date, TEXT_SUFFIX, bytes.size), bytes)
+
+    /**
+     * 写入失败时转入 failedChunks 稍后重试
+     */
+    private fun writeFile(fileName: String, bytes: ByteArray) {
+        if (tryWriteFile(fileName, bytes)) return
+        failedChunks.offer(fileName to bytes)
+        while (failedChunks.size > MAX_FAILED_CHUNKS) failedChunks.poll()
+    }
+
+    private fun tryWriteFile(fileName: String, bytes: ByteArray): Boolean {
+        val success = kotlin.runCatching {
+            obtainStream(fileName)?.run { write(bytes);flush();true } ?: false
+        }.onFailure { Log.e(TAG, "--->write $fileName failed", it) }.getOrDefault(false)
+        if (!success) closeStream()
+        return success
+    }
+
+    /**
+     * 获取文件写入流，同一文件复用同一个流，切换文件时关闭旧的流
+     * @param fileName String
+     * @return OutputStream?
+     */
+    private fun obtainStream(fileName: String): OutputStream? {
+        if (fileName == streamFileName) stream?.let { return it }
+        closeStream()
+        rotator.releaseClosed(null)//旧文件的写入流已关闭，写满的分段可以压缩了
+        //分发线程不是协程，在此阻塞等待；Android 9及以下可能需要等待权限申请，超时视为失败。
+        //等待期间被等待的工作也会写日志，须避免其因缓冲区已满而等待分发线程
+        val uri = LogDispatcher.withoutBackpressure {
+            runBlocking {
+                withTimeoutOrNull(OPEN_TIMEOUT_MILLIS) {
+                    FileUtil.awaitGetOrCreateFileInExternalPublicSpace(FileUtil.MediaType.FILE, DIR_LOG, fileName)
+                }
+            }
+        } ?: return null
+        return FileUtil.getOutputStream(uri, true)?.also {
+            stream = it
+            streamFileName = fileName
+        }
+    }
+
+    private fun closeStream() {
+        stream?.runCatching { close() }
+        stream = null
+        streamFileName = null
+    }
+
+    private fun appendRecord(record: LogRecord) {
+        if (record.time !in dayStart until dayEnd) updateDay(record.time)
+        if (binary && mmapSize <= 0) {
+            encoders.getOrPut(day) { BinaryLogEncoder() }.encode(record)
+            return
+        }
+        formatter.format(record, pending.getOrPut(day) { StringBuilder() })
+    }
+
+    private fun updateDay(time: Long) {
+        val calendar = Calendar.getInstance().apply {
+            timeInMillis = time
+            set(Calendar.HOUR_OF_DAY, 0)
+            set(Calendar.MINUTE, 0)
+            set(Calendar.SECOND, 0)
+            set(Calendar.MILLISECOND, 0)
+        }
+        dayStart = calendar.timeInMillis
+        calendar.add(Calendar.DAY_OF_MONTH, 1)
+        dayEnd = calendar.timeInMillis
+        day = dateFormat.format(Date(time))
+    }
+
+    companion object {
+        const val DIR_LOG = "log/"
+        const val DATE_FORMAT = "yyyy-MM-dd"
+        internal const val TEXT_SUFFIX = ".txt"
+        private const val NEW_LINE = '\n'.code.toByte()
+        private const val TAG = "FileLogSink"
+        private const val MAX_FAILED_CHUNKS = 16
+        private const val MAX_PENDING_BYTES = 1024 * 1024//关闭自动写入时内存中最多缓存的数据量
+        private const val MMAP_FILE_NAME = "log.mmap"
+        private const val AUTO_FLUSH_TICK_MILLIS = 1000L
+        private const val OPEN_TIMEOUT_MILLIS = 10 * 1000L
+
+        internal fun getMmapFile(): File = File(Global.getMainModuleContext().filesDir, MMAP_FILE_NAME)
+
+        /**
+         * 是否存在上次进程遗留的映射文件
+         */
+        internal fun hasPendingMmap(): Boolean = kotlin.runCatching { getMmapFile().exists() }.getOrDefault(false)
+    }
+}
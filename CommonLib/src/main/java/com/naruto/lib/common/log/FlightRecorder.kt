@@ -0,0 +1,76 @@
+package com.naruto.lib.common.log
+
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * @Description 飞行记录器：保存最近的若干条日志，崩溃时写入崩溃报告
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 数组预先分配，record 只写入已有字段的引用，不产生任何对象；与输出端无关，调试模式下同样记录。
+ * 每个槽位带序号，写入前置为-1，写完后发布；读取时前后序号不一致说明被覆盖，直接跳过。
+ * 各字段同样保存在原子数组中：写入用 lazySet（release，不会被重排到-1之前），读取用 get（acquire，
+ * 第二次读取序号不会被重排到读取字段之前），保证读到的不会是写了一半的记录
+ */
+internal class FlightRecorder(capacity: Int) {
+    private val size: Int = capacity.coerceAtLeast(2).let { c ->
+        Integer.highestOneBit(c - 1) shl 1//向上取2的幂
+    }
+    private val mask = (size - 1).toLong()
+    private val cursor = AtomicLong()
+    private val sequences = AtomicLongArray(size)//0:空，-1:写入中，其他:序号+1
+    private val times = AtomicLongArray(size)
+    private val levels = AtomicIntegerArray(size)
+    private val tags = AtomicReferenceArray<String>(size)
+    private val sites = AtomicReferenceArray<String>(size)
+    private val messages = AtomicReferenceArray<String>(size)
+
+    fun record(time: Long, level: Int, tag: String, site: String?, message: String) {
+        val seq = cursor.getAndIncrement()
+        val index = (seq and mask).toInt()
+        sequences.set(index, -1)
+        times.lazySet(index, time)
+        levels.lazySet(index, level)
+        tags.lazySet(index, tag)
+        sites.lazySet(index, site)
+        messages.lazySet(index, message)
+        sequences.lazySet(index, seq + 1)//发布
+    }
+
+    /**
+     * 按时间顺序输出，最多 size 条，每条内容最多 MAX_MESSAGE_LENGTH 个字符，耗时有上限
+     * @param sb StringBuilder
+     */
+    fun dump(sb: StringBuilder): StringBuilder {
+        val format = SimpleDateFormat(LogLineFormatter.DATETIME_FORMAT, Locale.getDefault())
+        val date = Date()
+        val end = cursor.get()
+        for (seq in (end - size).coerceAtLeast(0) until end) {
+            val index = (seq and mask).toInt()
+            if (sequences.get(index) != seq + 1) continue
+            val time = times.get(index)
+            val level = levels.get(index)
+            val tag = tags.get(index)
+            val site = sites.get(index)
+            val message = messages.get(index)
+            if (sequences.get(index) != seq + 1) continue//读取过程中被覆盖
+            date.time = time
+            sb.append(format.format(date)).append(' ')
+                .append(LogLineFormatter.levelChar(level)).append('/').append(tag).append(": ")
+            site?.let { sb.append('[').append(it).append(']') }
+            if (message != null && message.length > MAX_MESSAGE_LENGTH)
+                sb.append(message, 0, MAX_MESSAGE_LENGTH).append("...")
+            else sb.append(message)
+            sb.append('\n')
+        }
+        return sb
+    }
+
+    companion object {
+        private const val MAX_MESSAGE_LENGTH = 1024
+    }
+}
@@ -0,0 +1,116 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description 结构化日志构建器
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 输出格式为 logfmt：event=upload bytes=1024 ms=35 path="a b.txt"
+ * 每个线程复用同一个实例，基本类型重载不会装箱；级别被屏蔽时返回空实现，所有调用均无开销。
+ * 用法：LogUtils.kv(Log.INFO, "upload").kv("bytes", n).kv("ms", t).log()
+ * 每次 LogUtils.kv 得到的实例只能用于一条日志，须以 log() 结束，不要保存引用跨调用使用
+ */
+open class KvLogBuilder internal constructor() {
+    private val sb = StringBuilder(128)
+    private var level = Log.INFO
+    private var tag = ""
+    internal var inUse = false
+        private set
+
+    internal fun begin(level: Int, tag: String, event: String): KvLogBuilder {
+        this.level = level
+        this.tag = tag
+        inUse = true
+        sb.setLength(0)
+        sb.append("event=")
+        appendValue(event)
+        return this
+    }
+
+    open fun kv(key: String, value: Int): KvLogBuilder = apply { appendKey(key).append(value) }
+
+    open fun kv(key: String, value: Long): KvLogBuilder = apply { appendKey(key).append(value) }
+
+    open fun kv(key: String, value: Float): KvLogBuilder = apply { appendKey(key).append(value) }
+
+    open fun kv(key: String, value: Double): KvLogBuilder = apply { appendKey(key).append(value) }
+
+    open fun kv(key: String, value: Boolean): KvLogBuilder = apply { appendKey(key).append(value) }
+
+    open fun kv(key: String, value: Char): KvLogBuilder =
+        apply { appendKey(key);appendValue(value.toString()) }
+
+    open fun kv(key: String, value: String?): KvLogBuilder =
+        apply { appendKey(key);appendValue(value) }
+
+    /**
+     * 输出到 LogUtils 的各个输出端（logcat/文件）
+     */
+    open fun log() {
+        val message = sb.toString()
+        val level = level
+        sb.setLength(0)
+        inUse = false
+        LogUtils.log(level, tag, message, null)
+    }
+
+    private fun appendKey(key: String): StringBuilder = sb.append(' ').append(key).append('=')
+
+    /**
+     * 含空格、引号、等号或为空的值加引号并转义
+     */
+    private fun appendValue(value: String?) {
+        if (value == null) {
+            sb.append("null")
+            return
+        }
+        val needQuote = value.isEmpty() || value.any { it <= ' ' || it == '"' || it == '=' || it == '\\' }
+        if (!needQuote) {
+            sb.append(value)
+            return
+        }
+        sb.append('"')
+        for (c in value) {
+            when (c) {
+                '"', '\\' -> sb.append('\\').append(c)
+                '\n' -> sb.append("\\n")
+                '\r' -> sb.append("\\r")
+                '\t' -> sb.append("\\t")
+                else -> sb.append(c)
+            }
+        }
+        sb.append('"')
+    }
+
+    /**
+     * 级别被屏蔽时使用的空实现
+     */
+    internal object Disabled : KvLogBuilder() {
+        override fun kv(key: String, value: Int): KvLogBuilder = this
+        override fun kv(key: String, value: Long): KvLogBuilder = this
+        override fun kv(key: String, value: Float): KvLogBuilder = this
+        override fun kv(key: String, value: Double): KvLogBuilder = this
+        override fun kv(key: String, value: Boolean): KvLogBuilder = this
+        override fun kv(key: String, value: Char): KvLogBuilder = this
+        override fun kv(key: String, value: String?): KvLogBuilder = this
+        override fun log() {}
+    }
+
+    internal companion object {
+        private val pool = object : ThreadLocal<KvLogBuilder>() {
+            override fun initialValue(): KvLogBuilder = KvLogBuilder()
+        }
+
+        /**
+         * 获取当前线程的构建器。上一次构建尚未结束时（构建过程中又打印了结构化日志，或调用了 kv 却没有调用 log）
+         * 新建一个并替换池中的实例：嵌套时外层仍持有原实例不受影响，被遗弃的实例则随之回收，池不会一直失效
+         */
+        fun obtain(): KvLogBuilder {
+            val pooled = pool.get()!!
+            if (!pooled.inUse) return pooled
+            return KvLogBuilder().also { pool.set(it) }
+        }
+    }
+}
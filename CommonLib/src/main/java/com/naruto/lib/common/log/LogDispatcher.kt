@@ -0,0 +1,196 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import com.naruto.lib.common.utils.LogUtils.OverflowPolicy
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * @Description 日志分发线程
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 各线程只往环形缓冲区写入记录，由本线程统一取出并依次交给各个输出端（LogSink），
+ * 输出端再慢也只会让缓冲区积压（按 OverflowPolicy 处理），不会阻塞写日志的线程。
+ * 输出端的增删也在本线程执行，保证回调不会并发；
+ * 交给输出端之前先经过 LogSuppressor 合并重复日志并限流
+ */
+internal class LogDispatcher(capacity: Int, policy: OverflowPolicy) : Thread("LogDispatcher") {
+    private val ring = LogRingBuffer(capacity, policy)
+    private val flushRequested = AtomicBoolean()
+    private val sinkChanges = ConcurrentLinkedQueue<Pair<LogSink, Boolean>>()//(输出端,是否添加)
+
+    /**
+     * 已添加的输出端（含尚未生效的），供其他线程查询
+     */
+    val sinks = CopyOnWriteArrayList<LogSink>()
+
+    //以下仅在本线程访问
+    private val activeSinks = ArrayList<LogSink>()
+    private val dispatchFunc: (LogRecord) -> Unit = { dispatch(it) }
+    private val suppressor = LogSuppressor { fanOut(it) }
+    private val onFull: () -> Unit = { LockSupport.unpark(this) }
+
+    @Volatile
+    private var idle = false//是否因没有数据而休眠
+
+    @Volatile
+    private var rounds = 0L//已完成的处理轮数，仅本线程写入
+
+    init {
+        isDaemon = true
+        priority = MIN_PRIORITY
+    }
+
+    var policy: OverflowPolicy
+        get() = ring.policy
+        set(value) {
+            ring.policy = value
+        }
+
+    val droppedCount: Long get() = ring.droppedCount
+
+    fun offer(time: Long, level: Int, tag: String, site: String?, message: String, tr: Throwable?) {
+        //分发线程自己、以及分发线程正在等待的工作（见 withoutBackpressure）都不能阻塞等待缓冲区空位
+        val mayBlock = currentThread() !== this && awaitingOthers == 0
+        ring.offer(time, level, tag, site, message, tr, mayBlock, onFull)
+        if (idle) {
+            idle = false
+            LockSupport.unpark(this)
+        }
+    }
+
+    fun addSink(sink: LogSink) {
+        if (sinks.addIfAbsent(sink)) changeSink(sink, true)
+    }
+
+    fun removeSink(sink: LogSink) {
+        if (sinks.remove(sink)) changeSink(sink, false)
+    }
+
+    private fun changeSink(sink: LogSink, add: Boolean) {
+        sinkChanges.offer(sink to add)
+        LockSupport.unpark(this)
+    }
+
+    /**
+     * 请求各输出端立即输出缓存的数据，多次请求会被合并
+     */
+    fun requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) LockSupport.unpark(this)
+    }
+
+    /**
+     * 请求输出并同步等待，直到调用前写入的记录都已交给各输出端并输出（如崩溃时），最多等待 timeoutMillis
+     * @return Boolean 是否在时限内完成；在本线程调用或本线程未启动时直接返回false
+     */
+    fun awaitFlush(timeoutMillis: Long): Boolean {
+        if (currentThread() === this || !isAlive) return false
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        //正在进行的一轮可能已取走缓冲区，须等到调用后开始的一轮完成
+        val target = rounds + 2
+        requestFlush()
+        while (rounds < target) {
+            val remaining = deadline - System.nanoTime()
+            if (remaining <= 0) return false
+            LockSupport.unpark(this)
+            LockSupport.parkNanos(minOf(remaining, AWAIT_POLL_NANOS))
+        }
+        return true
+    }
+
+    override fun run() {
+        while (true) {
+            applySinkChanges()
+            val requested = flushRequested.getAndSet(false)
+            ring.drainTo(dispatchFunc)
+            suppressor.emitPending(System.currentTimeMillis(), requested)
+            forEachEnabledSink { it.onBatchEnd() }
+            if (requested) forEachEnabledSink { it.flush() }
+            rounds++
+            waitForWork()
+        }
+    }
+
+    private fun applySinkChanges() {
+        while (true) {
+            val (sink, add) = sinkChanges.poll() ?: return
+            if (add) {
+                if (sink in activeSinks) continue
+                activeSinks.add(sink)
+                sink.runCatching { onStart() }.onFailure { Log.e(TAG, "--->start $sink failed", it) }
+            } else if (activeSinks.remove(sink)) {
+                sink.runCatching { if (isEnabled()) flush();onStop() }
+                    .onFailure { Log.e(TAG, "--->stop $sink failed", it) }
+            }
+        }
+    }
+
+    private fun dispatch(record: LogRecord) {
+        if (suppressor.accept(record)) fanOut(record)
+    }
+
+    private fun fanOut(record: LogRecord) {
+        for (i in activeSinks.indices) {
+            val sink = activeSinks[i]
+            if (record.level < sink.minLevel || !sink.isEnabled()) continue
+            try {
+                sink.write(record)
+            } catch (e: Exception) {
+                Log.e(TAG, "--->$sink write failed", e)
+            }
+        }
+    }
+
+    private inline fun forEachEnabledSink(action: (LogSink) -> Unit) {
+        for (i in activeSinks.indices) {
+            val sink = activeSinks[i]
+            try {
+                if (sink.isEnabled()) action(sink)
+            } catch (e: Exception) {
+                Log.e(TAG, "--->$sink failed", e)
+            }
+        }
+    }
+
+    /**
+     * 等待下一批记录；有输出端需要定时处理或有待输出的重复/限流汇总时最多等待其要求的时长
+     */
+    private fun waitForWork() {
+        var delay = Long.MAX_VALUE
+        forEachEnabledSink { sink ->
+            val d = sink.wakeDelayMillis()
+            if (d in 1 until delay) delay = d
+        }
+        suppressor.pendingDelayMillis(System.currentTimeMillis()).let { if (it in 1 until delay) delay = it }
+        idle = true
+        if (ring.count() == 0 && !flushRequested.get() && sinkChanges.isEmpty()) {
+            if (delay == Long.MAX_VALUE) LockSupport.park(this)
+            else LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delay))
+        }
+        idle = false
+    }
+
+    companion object {
+        private const val TAG = "LogDispatcher"
+
+        @Volatile
+        private var awaitingOthers = 0//仅分发线程修改
+
+        /**
+         * 在分发线程中同步等待其他线程的工作（如输出端打开文件）时调用：期间任何线程写日志都不会因缓冲区已满
+         * 而阻塞（BLOCK策略临时退化为丢弃），否则被等待的工作写日志时会等待分发线程腾出空位，而分发线程在等待它，形成死锁
+         */
+        fun <T> withoutBackpressure(block: () -> T): T {
+            awaitingOthers++
+            try {
+                return block()
+            } finally {
+                awaitingOthers--
+            }
+        }
+        private val AWAIT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1)
+    }
+}
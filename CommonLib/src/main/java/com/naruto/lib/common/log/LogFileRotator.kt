@@ -0,0 +1,207 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import com.naruto.lib.common.TopFunction.runInCoroutine
+import com.naruto.lib.common.coroutine.CommonScope
+import com.naruto.lib.common.utils.FileUtil
+import com.naruto.lib.common.utils.LogUtils
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * @Description 日志文件滚动与清理
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 同一天的日志按大小分段：<date>.txt、<date>.1.txt、<date>.2.txt...，
+ * 写满的分段（以及日期切换后前一天的最后一个分段）在其写入流关闭后交给后台压缩为<name>.gz；
+ * 启动时压缩以前进程遗留的未压缩分段，并按总大小与保留天数清理旧文件。
+ * 除后台任务外仅在写日志线程调用
+ */
+internal class LogFileRotator {
+    private val segments = HashMap<String, Segment>()//key:日期+后缀
+    private val closedSegments = ArrayList<String>()//已写满、等待写入流关闭后压缩的分段
+
+    /**
+     * 获取本次写入应使用的文件名，当前分段将超出大小上限时切换到下一分段
+     * @param date String
+     * @param suffix String 如".txt"
+     * @param length Int 本次写入的字节数
+     * @return String
+     */
+    fun fileNameFor(date: String, suffix: String, length: Int): String {
+        val segment = segments.getOrPut(date + suffix) { loadSegment(date, suffix) }
+        val maxSize = LogUtils.maxLogFileSize
+        if (maxSize > 0 && segment.size > 0 && segment.size + length > maxSize) {
+            val closed = segmentName(date, segment.index, suffix)
+            segment.index++
+            segment.size = 0
+            closedSegments.add(closed)//此时写入流可能仍指向该文件，由 releaseClosed 在关闭后处理
+        }
+        segment.size += length
+        return segmentName(date, segment.index, suffix)
+    }
+
+    /**
+     * 移除非当天的分段状态，其最后一个分段不再写入，与写满的分段一样交给后台压缩
+     * @param openFileName String? 当前写入流打开的文件，暂不处理
+     */
+    fun retainDate(date: String, openFileName: String?) {
+        val iterator = segments.entries.iterator()
+        while (iterator.hasNext()) {
+            val (key, segment) = iterator.next()
+            if (key.startsWith(date)) continue
+            val suffix = key.substring(key.indexOf('.'))
+            closedSegments.add(segmentName(key.substringBefore('.'), segment.index, suffix))
+            iterator.remove()
+        }
+        releaseClosed(openFileName)
+    }
+
+    /**
+     * 将已不再写入的分段交给后台压缩并清理旧文件，须在这些分段的写入流关闭后调用
+     * @param openFileName String? 当前写入流打开的文件，保留到下次调用
+     */
+    fun releaseClosed(openFileName: String?) {
+        if (closedSegments.isEmpty()) return
+        val names = closedSegments.filter { it != openFileName }
+        if (names.isEmpty()) return
+        closedSegments.retainAll { it == openFileName }
+        val active = activeFileNames()
+        runInCoroutine(CommonScope.FILE, "LogRotation") {
+            if (LogUtils.compressRotatedLogs) names.forEach { compress(it) }
+            enforceRetention(active)
+        }
+    }
+
+    /**
+     * 在后台压缩以前进程遗留的未压缩分段，并按总大小与保留天数清理日志文件
+     * @param today String 当天日期
+     */
+    fun enforceRetentionAsync(today: String) {
+        val active = activeFileNames()
+        runInCoroutine(CommonScope.FILE, "LogRetention") {
+            if (LogUtils.compressRotatedLogs) compressLeftovers(today, active)
+            enforceRetention(active)
+        }
+    }
+
+    private fun activeFileNames(): Set<String> =
+        segments.mapTo(HashSet()) { (key, segment) ->
+            val suffix = key.substring(key.indexOf('.'))
+            segmentName(key.substringBefore('.'), segment.index, suffix)
+        }
+
+    /**
+     * 根据已有文件确定当前分段
+     */
+    private fun loadSegment(date: String, suffix: String): Segment {
+        var index = 0
+        var size = 0L
+        var compressed = false
+        kotlin.runCatching { FileUtil.listFilesInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG) }
+            .onFailure { Log.e(TAG, "--->list log files failed", it) }
+            .getOrNull()?.forEach { data ->
+                val name = data.fileName ?: return@forEach
+                val i = parseSegmentIndex(name, date, suffix) ?: return@forEach
+                val gz = name.endsWith(GZ_SUFFIX)
+                if (i > index || (i == index && !gz)) {
+                    index = i
+                    compressed = gz
+                    size = if (gz) 0 else data.size
+                }
+            }
+        if (compressed) {//最新分段已压缩，不能再追加
+            index++
+            size = 0
+        }
+        return Segment(index, size)
+    }
+
+    /**
+     * 压缩非当天的未压缩分段，以及当天除最新分段外的未压缩分段（以前的进程退出前未来得及压缩）
+     * @param active Set<String> 正在写入的文件，不压缩
+     */
+    private suspend fun compressLeftovers(today: String, active: Set<String>) {
+        val names = kotlin.runCatching {
+            FileUtil.listFilesInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG)
+        }.onFailure { Log.e(TAG, "--->list log files failed", it) }.getOrNull()
+            ?.mapNotNull { it.fileName } ?: return
+        val latest = HashMap<String, Int>()//当天各后缀的最新分段序号
+        for (suffix in SUFFIXES) {
+            names.mapNotNull { parseSegmentIndex(it, today, suffix) }.maxOrNull()?.let { latest[suffix] = it }
+        }
+        for (name in names) {
+            if (name.endsWith(GZ_SUFFIX) || name in active || !SEGMENT_NAME.matches(name)) continue
+            val suffix = SUFFIXES.firstOrNull { name.endsWith(it) } ?: continue
+            val index = parseSegmentIndex(name, today, suffix)
+            if (index == null || index < (latest[suffix] ?: 0)) compress(name)
+        }
+    }
+
+    /**
+     * 压缩日志文件，成功后删除原文件
+     */
+    private suspend fun compress(fileName: String) {
+        val uri = FileUtil.awaitGetFileInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG, fileName)
+            ?: return
+        val bytes = FileUtil.awaitReadDataFromFile(uri) { input ->
+            ByteArrayOutputStream().also { bos ->
+                GZIPOutputStream(bos).use { input.copyTo(it) }
+            }.toByteArray()
+        } ?: return
+        val success = FileUtil.awaitWriteDataToExternalPublicSpaceFile(
+            bytes, MEDIA_TYPE, FileLogSink.DIR_LOG, fileName + GZ_SUFFIX, false
+        )
+        if (success) FileUtil.awaitDeleteFileInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG, fileName)
+    }
+
+    /**
+     * 先删除超过保留天数的文件，再从最旧的文件开始删除直到总大小不超过上限
+     * @param active Set<String> 正在写入的文件，不会被删除
+     */
+    private fun enforceRetention(active: Set<String>) {
+        val maxTotal = LogUtils.maxTotalLogSize
+        val days = LogUtils.logRetentionDays
+        if (maxTotal <= 0 && days <= 0) return
+        val files = kotlin.runCatching {
+            FileUtil.listFilesInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG)
+        }.onFailure { Log.e(TAG, "--->list log files failed", it) }.getOrNull() ?: return
+        val candidates = files.filter { it.fileName !in active }.sortedBy { it.createTime }
+        var total = files.sumOf { it.size }
+        val expiry = if (days > 0) System.currentTimeMillis() - days * DAY_MILLIS else Long.MIN_VALUE
+        for (data in candidates) {
+            val expired = data.createTime < expiry
+            if (!expired && (maxTotal <= 0 || total <= maxTotal)) break
+            val deleted = kotlin.runCatching {
+                FileUtil.deleteFileInExternalPublicSpace(MEDIA_TYPE, FileLogSink.DIR_LOG, data.fileName!!)
+            }.getOrDefault(false)
+            if (deleted) total -= data.size
+        }
+    }
+
+    private class Segment(var index: Int, var size: Long)
+
+    companion object {
+        private const val TAG = "LogFileRotator"
+        private const val GZ_SUFFIX = ".gz"
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+        private val MEDIA_TYPE = FileUtil.MediaType.FILE
+        private val SEGMENT_NAME = Regex("""\d{4}-\d{2}-\d{2}(\.\d+)?\.\w+""")
+        private val SUFFIXES = arrayOf(FileLogSink.TEXT_SUFFIX, BinaryLogFormat.FILE_SUFFIX)
+
+        fun segmentName(date: String, index: Int, suffix: String): String =
+            if (index == 0) date + suffix else "$date.$index$suffix"
+
+        /**
+         * 解析分段序号，如"2026-10-18.3.txt.gz"->3，不匹配时返回null
+         */
+        private fun parseSegmentIndex(name: String, date: String, suffix: String): Int? {
+            if (!name.startsWith(date)) return null
+            val rest = name.substring(date.length).removeSuffix(GZ_SUFFIX)
+            if (!rest.endsWith(suffix)) return null
+            val middle = rest.removeSuffix(suffix)
+            return if (middle.isEmpty()) 0 else middle.removePrefix(".").toIntOrNull()
+                ?.takeIf { middle.startsWith(".") }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * @Description 日志行格式化（非线程安全，仅在分发线程使用）
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 格式：yyyy-MM-dd HH:mm:ss:SSS [调用位置]内容，withLevelAndTag 为true时在时间后加上"级别/tag: "
+ */
+internal class LogLineFormatter(private val withLevelAndTag: Boolean) {
+    private val dateTimeFormat = SimpleDateFormat(DATETIME_FORMAT, Locale.getDefault())
+    private val date = Date()
+
+    fun format(record: LogRecord, sb: StringBuilder): StringBuilder {
+        date.time = record.time
+        sb.append(dateTimeFormat.format(date)).append(' ')
+        if (withLevelAndTag) sb.append(levelChar(record.level)).append('/').append(record.tag).append(": ")
+        record.site?.let { sb.append('[').append(it).append(']') }
+        sb.append(record.message).append('\n')
+        if (withLevelAndTag) record.throwable?.let {
+            sb.append(Log.getStackTraceString(it)).append('\n')
+        }
+        return sb
+    }
+
+    companion object {
+        const val DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss:SSS"
+
+        fun levelChar(level: Int): Char = when (level) {
+            Log.VERBOSE -> 'V'
+            Log.DEBUG -> 'D'
+            Log.INFO -> 'I'
+            Log.WARN -> 'W'
+            Log.ERROR -> 'E'
+            else -> 'A'
+        }
+    }
+}
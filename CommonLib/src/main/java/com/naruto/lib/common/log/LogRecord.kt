@@ -0,0 +1,40 @@
+package com.naruto.lib.common.log
+
+/**
+ * @Description 日志记录
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 作为环形缓冲区的预分配槽位被重复使用，消费方不可持有其引用
+ */
+class LogRecord {
+    var time: Long = 0
+        internal set
+    var level: Int = 0
+        internal set
+    var tag: String = ""
+        internal set
+    var site: String? = null//调用位置，如"com.xx.Foo.bar(Foo.kt:12)"
+        internal set
+    var message: String = ""
+        internal set
+    var throwable: Throwable? = null
+        internal set
+
+    internal fun set(
+        time: Long, level: Int, tag: String, site: String?, message: String, throwable: Throwable?
+    ) {
+        this.time = time
+        this.level = level
+        this.tag = tag
+        this.site = site
+        this.message = message
+        this.throwable = throwable
+    }
+
+    internal fun clear() {
+        tag = ""
+        site = null
+        message = ""
+        throwable = null
+    }
+}
@@ -0,0 +1,123 @@
+package com.naruto.lib.common.log
+
+import com.naruto.lib.common.utils.LogUtils.OverflowPolicy
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * @Description 有界多生产者环形缓冲区（无锁）
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 每个槽位带序号，生产者/消费者通过CAS抢占位置，槽位中的LogRecord预先分配并重复使用
+ */
+internal class LogRingBuffer(capacity: Int, @Volatile var policy: OverflowPolicy) {
+    private val size: Int = capacity.coerceAtLeast(2).let { c ->
+        Integer.highestOneBit(c - 1) shl 1//向上取2的幂
+    }
+    private val mask = (size - 1).toLong()
+    private val slots = Array(size) { LogRecord() }
+    private val sequences = AtomicLongArray(size).apply { for (i in 0 until size) set(i, i.toLong()) }
+    private val tail = AtomicLong()//写入位置
+    private val head = AtomicLong()//读取位置
+    private val dropped = AtomicLong()
+
+    val capacity: Int get() = size
+
+    /**
+     * 被丢弃的记录数
+     */
+    val droppedCount: Long get() = dropped.get()
+
+    /**
+     * 当前缓冲的记录数（近似值）
+     */
+    fun count(): Int = (tail.get() - head.get()).coerceIn(0, size.toLong()).toInt()
+
+    /**
+     * 写入一条记录
+     * @param onFull Function0<Unit> 缓冲区已满时的回调（用于唤醒消费者）
+     * @param mayBlock Boolean 为false时BLOCK策略退化为丢弃，防止消费线程自己阻塞自己
+     * @return Boolean 是否写入成功
+     */
+    fun offer(
+        time: Long, level: Int, tag: String, site: String?, message: String, throwable: Throwable?,
+        mayBlock: Boolean, onFull: () -> Unit
+    ): Boolean {
+        while (true) {
+            if (tryOffer(time, level, tag, site, message, throwable)) return true
+            onFull()
+            when {
+                policy == OverflowPolicy.DROP_OLDEST -> if (poll(DISCARD)) dropped.incrementAndGet()
+                mayBlock -> LockSupport.parkNanos(BLOCK_PARK_NANOS)
+                else -> {
+                    dropped.incrementAndGet()
+                    return false
+                }
+            }
+        }
+    }
+
+    private fun tryOffer(
+        time: Long, level: Int, tag: String, site: String?, message: String, throwable: Throwable?
+    ): Boolean {
+        var pos = tail.get()
+        while (true) {
+            val index = (pos and mask).toInt()
+            val dif = sequences.get(index) - pos
+            when {
+                dif == 0L -> if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index].set(time, level, tag, site, message, throwable)
+                    sequences.lazySet(index, pos + 1)//发布
+                    return true
+                } else pos = tail.get()
+
+                dif < 0 -> return false//已满
+                else -> pos = tail.get()
+            }
+        }
+    }
+
+    /**
+     * 取出一条记录交给consumer处理，consumer返回后槽位即被回收
+     * @return Boolean 是否取到记录
+     */
+    fun poll(consumer: (LogRecord) -> Unit): Boolean {
+        var pos = head.get()
+        while (true) {
+            val index = (pos and mask).toInt()
+            val dif = sequences.get(index) - (pos + 1)
+            when {
+                dif == 0L -> if (head.compareAndSet(pos, pos + 1)) {
+                    val record = slots[index]
+                    try {
+                        consumer(record)
+                    } finally {
+                        record.clear()
+                        sequences.lazySet(index, pos + mask + 1)//释放槽位
+                    }
+                    return true
+                } else pos = head.get()
+
+                dif < 0 -> return false//为空
+                else -> pos = head.get()
+            }
+        }
+    }
+
+    /**
+     * 批量取出
+     * @param limit Int 本次最多取出的数量，防止生产者持续写入导致无法返回
+     * @return Int 取出数量
+     */
+    fun drainTo(consumer: (LogRecord) -> Unit, limit: Int = size): Int {
+        var count = 0
+        while (count < limit && poll(consumer)) count++
+        return count
+    }
+
+    companion object {
+        private const val BLOCK_PARK_NANOS = 100_000L
+        private val DISCARD: (LogRecord) -> Unit = {}
+    }
+}
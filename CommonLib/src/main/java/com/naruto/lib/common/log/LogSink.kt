@@ -0,0 +1,56 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+
+/**
+ * @Description 日志输出端
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 所有方法都在日志分发线程（LogDispatcher）中调用，实现类无需考虑线程安全，
+ * 但也不应长时间阻塞，否则会拖慢其他输出端（不会影响写日志的线程）。
+ * 通过 LogUtils.addSink/removeSink 添加或移除
+ */
+abstract class LogSink {
+    /**
+     * 本输出端的最低级别，低于此级别的记录不会交给 write
+     */
+    @Volatile
+    var minLevel: Int = Log.VERBOSE
+
+    /**
+     * 是否启用，不启用时不会收到任何回调（onStart/onStop除外）
+     */
+    open fun isEnabled(): Boolean = true
+
+    /**
+     * 添加到分发线程后调用
+     */
+    open fun onStart() {}
+
+    /**
+     * 处理一条记录，record 在方法返回后即被回收，不可持有其引用
+     * @param record LogRecord
+     */
+    abstract fun write(record: LogRecord)
+
+    /**
+     * 一批记录分发完毕，可在此批量输出
+     */
+    open fun onBatchEnd() {}
+
+    /**
+     * 请求立即输出缓存的数据（LogUtils.writeToFile）
+     */
+    open fun flush() {}
+
+    /**
+     * 没有新记录时，分发线程最迟多久后再次调用 onBatchEnd（用于按时间间隔输出缓存的数据）
+     * @return Long 毫秒，<=0表示不需要定时唤醒
+     */
+    open fun wakeDelayMillis(): Long = 0
+
+    /**
+     * 从分发线程移除后调用，应在此释放资源
+     */
+    open fun onStop() {}
+}
@@ -0,0 +1,162 @@
+package com.naruto.lib.common.log
+
+import com.naruto.lib.common.crash.CrashSignatureIndex
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description 重复日志合并与限流（非线程安全，仅在分发线程使用）
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 以 tag+调用位置 区分来源，只处理已获取调用位置的记录（见 LogUtils.callerLocationMode），
+ * 未获取调用位置的记录直接输出：仅按tag区分会让同一tag下互不相关的调用位置共用限流额度、被误合并，
+ * SAMPLED 模式下同一调用位置也会在有/无调用位置两个来源之间来回切换。每个来源：
+ * 1.连续相同（级别、内容与异常都相同）的记录只输出第一条，之后以"[repeated N times]"汇总；
+ * 2.按令牌桶限流，超出的记录丢弃，恢复后以"[N lines suppressed by rate limit]"汇总。
+ * 来源状态保存在固定大小的直接映射表中，冲突时先输出被替换来源的汇总，内存占用有上限；
+ * 令牌桶属于表项而不是来源，替换来源时保留，交替出现的冲突来源共用一个桶，不会因互相替换而绕过限流
+ */
+internal class LogSuppressor(private val output: (LogRecord) -> Unit) {
+    private val entries = arrayOfNulls<Entry>(TABLE_SIZE)
+    private val summary = LogRecord()
+
+    /**
+     * @return Boolean 是否输出该记录（返回前可能已先输出了该来源的汇总）
+     */
+    fun accept(record: LogRecord): Boolean {
+        val dedup = LogUtils.suppressDuplicates
+        val rate = LogUtils.rateLimitPerSecond
+        if (!dedup && rate <= 0) return true
+        val site = record.site ?: return true
+        val tag = record.tag
+        val index = (tag.hashCode() * 31 + site.hashCode()) and (TABLE_SIZE - 1)
+        var entry = entries[index]
+        if (entry == null || entry.tag != tag || entry.site != site) {
+            entry?.let { emitSummary(it, record.time) }
+            entry = (entry ?: Entry().also { entries[index] = it }).apply { reset(tag, site, record.time) }
+        }
+        if (dedup && entry.message != null && record.level == entry.level && record.message == entry.message
+            && throwableKey(record.throwable) == entry.throwableKey
+        ) {
+            if (entry.repeats++ == 0) entry.since = record.time
+            return false
+        }
+        if (entry.repeats > 0) emitRepeats(entry, record.time)
+        if (rate > 0 && !entry.tryAcquire(record.time, rate, LogUtils.rateLimitBurst)) {
+            if (entry.limited++ == 0) entry.since = record.time
+            return false
+        }
+        if (entry.limited > 0) emitLimited(entry, record.time)
+        entry.level = record.level
+        entry.message = record.message
+        entry.throwableKey = throwableKey(record.throwable)
+        return true
+    }
+
+    /**
+     * 输出已持续超过 SUMMARY_INTERVAL_MILLIS 的汇总，避免长时间重复的日志一直没有输出
+     * @param force Boolean 为true时输出全部汇总
+     */
+    fun emitPending(now: Long, force: Boolean) {
+        for (entry in entries) {
+            if (entry == null || !entry.hasPending()) continue
+            if (force || now - entry.since >= SUMMARY_INTERVAL_MILLIS) emitSummary(entry, now)
+        }
+    }
+
+    /**
+     * @return Long 下一次需要输出汇总的等待时长（毫秒），没有待输出的汇总时返回0
+     */
+    fun pendingDelayMillis(now: Long): Long {
+        var delay = 0L
+        for (entry in entries) {
+            if (entry == null || !entry.hasPending()) continue
+            val d = (entry.since + SUMMARY_INTERVAL_MILLIS - now).coerceAtLeast(1)
+            if (delay == 0L || d < delay) delay = d
+        }
+        return delay
+    }
+
+    private fun emitSummary(entry: Entry, time: Long) {
+        if (entry.repeats > 0) emitRepeats(entry, time)
+        if (entry.limited > 0) emitLimited(entry, time)
+    }
+
+    private fun emitRepeats(entry: Entry, time: Long) {
+        val text = "[repeated ${entry.repeats} times] ${abbreviate(entry.message)}"
+        entry.repeats = 0
+        entry.since = time
+        emitRecord(entry, text, time)
+    }
+
+    private fun emitLimited(entry: Entry, time: Long) {
+        val text = "[${entry.limited} lines suppressed by rate limit]"
+        entry.limited = 0
+        entry.since = time
+        emitRecord(entry, text, time)
+    }
+
+    private fun emitRecord(entry: Entry, text: String, time: Long) {
+        summary.set(time, entry.level, entry.tag, entry.site, text, null)
+        try {
+            output(summary)
+        } finally {
+            summary.clear()
+        }
+    }
+
+    /**
+     * 异常的比较依据：异常链的类名与调用栈（见 CrashSignatureIndex.signatureOf）及消息，不保存异常对象本身
+     */
+    private fun throwableKey(tr: Throwable?): Long {
+        if (tr == null) return 0
+        return CrashSignatureIndex.signatureOf(THROWABLE_TYPE, tr) * 31 + (tr.message?.hashCode() ?: 0)
+    }
+
+    private fun abbreviate(message: String?): String = when {
+        message == null -> ""
+        message.length <= MAX_SUMMARY_MESSAGE_LENGTH -> message
+        else -> message.substring(0, MAX_SUMMARY_MESSAGE_LENGTH) + "..."
+    }
+
+    private class Entry {
+        var tag = ""
+        var site: String? = null
+        var level = 0
+        var message: String? = null//最后一条输出的内容
+        var throwableKey = 0L//最后一条输出的异常，见 throwableKey
+        var repeats = 0//最后一条之后重复的次数
+        var limited = 0//被限流丢弃的条数
+        var since = 0L//当前汇总开始累计的时间
+        private var tokens = Double.MAX_VALUE//首次获取时按上限补满
+        private var refillTime = 0L
+
+        fun reset(tag: String, site: String?, time: Long) {
+            this.tag = tag
+            this.site = site
+            message = null
+            throwableKey = 0
+            repeats = 0
+            limited = 0
+            since = time
+        }
+
+        fun hasPending(): Boolean = repeats > 0 || limited > 0
+
+        fun tryAcquire(time: Long, ratePerSecond: Int, burst: Int): Boolean {
+            val capacity = burst.coerceAtLeast(1).toDouble()
+            val elapsed = (time - refillTime).coerceAtLeast(0)
+            tokens = (tokens + elapsed * ratePerSecond / 1000.0).coerceAtMost(capacity)
+            refillTime = time
+            if (tokens < 1) return false
+            tokens--
+            return true
+        }
+    }
+
+    companion object {
+        private const val TABLE_SIZE = 256//须为2的幂
+        private const val SUMMARY_INTERVAL_MILLIS = 5_000L
+        private const val MAX_SUMMARY_MESSAGE_LENGTH = 80
+        private const val THROWABLE_TYPE = "log"
+    }
+}
@@ -0,0 +1,23 @@
+package com.naruto.lib.common.log
+
+import android.util.Log
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description logcat输出端
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 在调试模式或 LogUtils.documentable 为false时启用
+ */
+class LogcatSink internal constructor() : LogSink() {
+
+    override fun isEnabled(): Boolean = Global.isDebug || !LogUtils.documentable
+
+    override fun write(record: LogRecord) {
+        val site = record.site
+        val msg = if (site == null) record.message else "[$site]${record.message}"
+        val tr = record.throwable
+        Log.println(record.level, record.tag, if (tr == null) msg else msg + '\n' + Log.getStackTraceString(tr))
+    }
+}
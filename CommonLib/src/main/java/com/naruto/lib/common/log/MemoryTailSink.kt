@@ -0,0 +1,54 @@
+package com.naruto.lib.common.log
+
+/**
+ * @Description 内存日志输出端，保留最近的若干行，供应用内日志查看器使用
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 行格式：yyyy-MM-dd HH:mm:ss:SSS 级别/tag: [调用位置]内容
+ * 用法：val tail = MemoryTailSink(500).also { LogUtils.addSink(it) }；界面中按 version 是否变化决定是否刷新 snapshot()
+ */
+class MemoryTailSink(val capacity: Int = 500) : LogSink() {
+    private val lines = arrayOfNulls<String>(capacity.coerceAtLeast(1))
+    private var next = 0//下一行写入位置
+    private var count = 0
+    private val formatter = LogLineFormatter(true)
+    private val sb = StringBuilder(256)
+
+    /**
+     * 每写入一行加1
+     */
+    @Volatile
+    var version: Long = 0
+        private set
+
+    override fun write(record: LogRecord) {
+        sb.setLength(0)
+        formatter.format(record, sb)
+        sb.setLength(sb.length - 1)//去掉行尾换行
+        val line = sb.toString()
+        synchronized(lines) {
+            lines[next] = line
+            next = (next + 1) % lines.size
+            if (count < lines.size) count++
+            version++
+        }
+    }
+
+    /**
+     * 获取当前保留的行，从旧到新
+     * @return List<String>
+     */
+    fun snapshot(): List<String> = synchronized(lines) {
+        val start = (next - count + lines.size) % lines.size
+        List(count) { lines[(start + it) % lines.size]!! }
+    }
+
+    fun clear() {
+        synchronized(lines) {
+            lines.fill(null)
+            next = 0
+            count = 0
+            version++
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.naruto.lib.common.log
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * @Description 内存映射日志文件
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 写入映射区域的数据由系统负责落盘，即使进程被杀或崩溃也不会丢失。
+ * 文件结构：魔数(4字节) + 数据结束位置(4字节) + 数据
+ */
+internal class MmapLogFile(file: File, size: Int) {
+    private val buffer: MappedByteBuffer
+
+    init {
+        file.parentFile?.mkdirs()
+        //已有文件比指定大小大时沿用原大小，避免遗留数据被截断
+        val existing = file.length().coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+        val capacity = maxOf(size.coerceAtLeast(HEADER_SIZE * 2), existing)
+        buffer = RandomAccessFile(file, "rw").use { raf ->
+            //映射建立后即使关闭channel依然有效
+            raf.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity.toLong())
+        }
+        if (buffer.getInt(0) != MAGIC || end() !in HEADER_SIZE..capacity) reset()
+    }
+
+    val isEmpty: Boolean get() = end() == HEADER_SIZE
+
+    /**
+     * 已写入的数据长度
+     */
+    val length: Int get() = end() - HEADER_SIZE
+
+    /**
+     * 追加数据
+     * @return Boolean 剩余空间不足时返回false
+     */
+    fun append(bytes: ByteArray): Boolean {
+        val end = end()
+        if (buffer.capacity() - end < bytes.size) return false
+        buffer.position(end)
+        buffer.put(bytes)
+        buffer.putInt(4, end + bytes.size)//数据写完后再更新结束位置
+        return true
+    }
+
+    fun readAll(): ByteArray {
+        val bytes = ByteArray(end() - HEADER_SIZE)
+        buffer.position(HEADER_SIZE)
+        buffer.get(bytes)
+        return bytes
+    }
+
+    /**
+     * 丢弃开头 count 字节的数据，剩余数据移到开头
+     */
+    fun discard(count: Int) {
+        if (count <= 0) return
+        val remaining = end() - HEADER_SIZE - count
+        if (remaining <= 0) {
+            reset()
+            return
+        }
+        val tail = ByteArray(remaining)
+        buffer.position(HEADER_SIZE + count)
+        buffer.get(tail)
+        buffer.position(HEADER_SIZE)
+        buffer.put(tail)
+        buffer.putInt(4, HEADER_SIZE + remaining)
+    }
+
+    fun reset() {
+        buffer.putInt(0, MAGIC)
+        buffer.putInt(4, HEADER_SIZE)
+    }
+
+    private fun end(): Int = buffer.getInt(4)
+
+    companion object {
+        private const val MAGIC = 0x4E4C4F47//"NLOG"
+        private const val HEADER_SIZE = 8
+
+        /**
+         * 读取上次进程遗留在文件中的数据（不建立映射）
+         * @param file File
+         * @return ByteArray? 没有数据时返回null
+         */
+        fun recover(file: File): ByteArray? {
+            if (!file.exists() || file.length() <= HEADER_SIZE) return null
+            return RandomAccessFile(file, "r").use { raf ->
+                if (raf.readInt() != MAGIC) return null
+                val end = raf.readInt()
+                if (end <= HEADER_SIZE || end > raf.length()) return null
+                ByteArray(end - HEADER_SIZE).also { raf.readFully(it) }
+            }
+        }
+    }
+}
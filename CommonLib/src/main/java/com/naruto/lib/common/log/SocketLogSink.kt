@@ -0,0 +1,83 @@
+package com.naruto.lib.common.log
+
+import android.net.LocalServerSocket
+import android.net.LocalSocket
+import android.net.LocalSocketAddress
+import android.os.Process
+import android.util.Log
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * @Description 本地socket输出端，用于现场测试时实时查看日志
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 在抽象命名空间监听名为 name 的本地socket，行格式同 MemoryTailSink。
+ * 电脑端查看：adb forward tcp:7000 localabstract:<name>，然后 nc localhost 7000。
+ * 只接受 shell（adb）与本应用的连接，其他应用的连接会被直接关闭；
+ * 没有客户端连接时不做任何格式化；写入失败的客户端会被断开
+ */
+class SocketLogSink(private val name: String) : LogSink() {
+    private val clients = CopyOnWriteArrayList<LocalSocket>()
+    private val formatter = LogLineFormatter(true)
+    private val sb = StringBuilder(1024)
+
+    @Volatile
+    private var server: LocalServerSocket? = null
+
+    override fun isEnabled(): Boolean = clients.isNotEmpty()
+
+    override fun onStart() {
+        val server = LocalServerSocket(name).also { server = it }
+        Thread({ acceptLoop(server) }, "SocketLogSink-$name").apply { isDaemon = true }.start()
+    }
+
+    override fun write(record: LogRecord) {
+        formatter.format(record, sb)
+    }
+
+    override fun onBatchEnd() {
+        if (sb.isEmpty()) return
+        val bytes = sb.toString().toByteArray()
+        sb.setLength(0)
+        for (client in clients) {
+            kotlin.runCatching { client.outputStream.write(bytes) }.onFailure { disconnect(client) }
+        }
+    }
+
+    override fun onStop() {
+        val server = server ?: return
+        this.server = null
+        server.runCatching { close() }
+        //关闭LocalServerSocket不会中断accept，主动连接一次使其返回
+        kotlin.runCatching { LocalSocket().use { it.connect(LocalSocketAddress(name)) } }
+        clients.forEach { disconnect(it) }
+    }
+
+    private fun acceptLoop(server: LocalServerSocket) {
+        while (this.server === server) {
+            val client = kotlin.runCatching { server.accept() }
+                .onFailure { Log.e(TAG, "--->accept failed", it) }.getOrNull() ?: break
+            if (this.server === server && isTrusted(client)) clients.add(client)
+            else client.runCatching { close() }
+        }
+    }
+
+    /**
+     * 对端是否为 shell 或本应用
+     */
+    private fun isTrusted(client: LocalSocket): Boolean {
+        val uid = kotlin.runCatching { client.peerCredentials.uid }
+            .onFailure { Log.e(TAG, "--->get peer credentials failed", it) }.getOrNull() ?: return false
+        return uid == SHELL_UID || uid == Process.myUid()
+    }
+
+    private fun disconnect(client: LocalSocket) {
+        clients.remove(client)
+        client.runCatching { close() }
+    }
+
+    companion object {
+        private const val TAG = "SocketLogSink"
+        private const val SHELL_UID = 2000//Process.SHELL_UID，API 29才公开
+    }
+}
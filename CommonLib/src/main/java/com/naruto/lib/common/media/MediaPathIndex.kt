@@ -0,0 +1,131 @@
+package com.naruto.lib.common.media
+
+import android.content.ContentUris
+import android.database.ContentObserver
+import android.net.Uri
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.utils.FileUtil
+import com.naruto.lib.common.utils.LogUtils
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * @Description 外部公共空间文件的 (相对路径, 文件名) -> Uri 缓存
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 按 MediaType 分别开启（enable），未开启的类型直接查询MediaStore。
+ * 只缓存查到的文件，查不到时每次都会查询；开启时注册 ContentObserver，
+ * 收到某个文件的变更通知时移除对应缓存（文件被删除、重命名、修改后下次访问会重新查询），无法确定具体文件时清空该类型的缓存
+ */
+object MediaPathIndex {
+    private const val TAG = "MediaPathIndex"
+    private val indexes = arrayOfNulls<Index>(FileUtil.MediaType.values().size)
+
+    fun isEnabled(mediaType: FileUtil.MediaType): Boolean = indexes[mediaType.ordinal] != null
+
+    @Synchronized
+    fun enable(mediaType: FileUtil.MediaType) {
+        if (indexes[mediaType.ordinal] != null) return
+        val index = Index()
+        kotlin.runCatching {
+            Global.getMainModuleContext().contentResolver.registerContentObserver(
+                FileUtil.getMediaStoreData(mediaType).contentUri!!, true, index.observer
+            )
+            indexes[mediaType.ordinal] = index
+        }.onFailure { LogUtils.e(TAG, "--->registerContentObserver failed: $mediaType", it) }
+    }
+
+    @Synchronized
+    fun disable(mediaType: FileUtil.MediaType) {
+        val index = indexes[mediaType.ordinal] ?: return
+        indexes[mediaType.ordinal] = null
+        Global.getMainModuleContext().contentResolver.unregisterContentObserver(index.observer)
+    }
+
+    /**
+     * 获取文件Uri，未开启缓存或缓存中没有时通过 loader 查询
+     * @param loader Function0<Uri?> 查询MediaStore
+     */
+    fun get(
+        mediaType: FileUtil.MediaType, relativePath: String, fileName: String, loader: () -> Uri?
+    ): Uri? = indexes[mediaType.ordinal]?.get(relativePath, fileName, loader) ?: loader()
+
+    /**
+     * 清空缓存
+     * @param mediaType MediaType? 为null时清空所有类型
+     */
+    fun invalidate(mediaType: FileUtil.MediaType? = null) {
+        if (mediaType == null) indexes.forEach { it?.clear() }
+        else indexes[mediaType.ordinal]?.clear()
+    }
+
+    /**
+     * @return Stats? 未开启时为null
+     */
+    fun stats(mediaType: FileUtil.MediaType): Stats? = indexes[mediaType.ordinal]?.stats()
+
+    /**
+     * @param hits Long 命中次数
+     * @param misses Long 未命中（查询MediaStore）次数
+     * @param invalidations Long 因变更通知移除缓存的次数
+     * @param size Int 当前缓存条数
+     */
+    class Stats(val hits: Long, val misses: Long, val invalidations: Long, val size: Int) {
+        val hitRate: Double get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+
+        override fun toString(): String =
+            "Stats(hits=$hits, misses=$misses, invalidations=$invalidations, size=$size)"
+    }
+
+    private class Index {
+        private val map = ConcurrentHashMap<String, Entry>()
+        private val generation = AtomicInteger()//每次移除缓存后递增，避免查询期间发生的变更被写回的旧结果覆盖
+        private val hits = AtomicLong()
+        private val misses = AtomicLong()
+        private val invalidations = AtomicLong()
+
+        val observer = object : ContentObserver(null) {
+            override fun onChange(selfChange: Boolean) = onChange(selfChange, null)
+
+            override fun onChange(selfChange: Boolean, uri: Uri?) {
+                val id = uri?.let { kotlin.runCatching { ContentUris.parseId(it) }.getOrNull() } ?: -1
+                if (id < 0) clear() else remove(id)
+            }
+        }
+
+        fun get(relativePath: String, fileName: String, loader: () -> Uri?): Uri? {
+            val key = relativePath + '\u0000' + fileName
+            map[key]?.let {
+                hits.incrementAndGet()
+                return it.uri
+            }
+            misses.incrementAndGet()
+            val gen = generation.get()
+            val uri = loader() ?: return null
+            val id = kotlin.runCatching { ContentUris.parseId(uri) }.getOrDefault(-1)
+            if (id >= 0 && generation.get() == gen) {
+                //检查与写入之间可能有移除发生且其遍历漏掉本条，写入后再检查一次，代数变化则撤销本次写入
+                val entry = Entry(uri, id)
+                map[key] = entry
+                if (generation.get() != gen) map.remove(key, entry)
+            }
+            return uri
+        }
+
+        fun remove(id: Long) {
+            generation.incrementAndGet()
+            if (map.values.removeAll { it.id == id }) invalidations.incrementAndGet()
+        }
+
+        fun clear() {
+            generation.incrementAndGet()
+            if (map.isNotEmpty()) invalidations.incrementAndGet()
+            map.clear()
+        }
+
+        fun stats(): Stats = Stats(hits.get(), misses.get(), invalidations.get(), map.size)
+    }
+
+    private class Entry(val uri: Uri, val id: Long)
+}
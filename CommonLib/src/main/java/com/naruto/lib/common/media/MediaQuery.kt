@@ -0,0 +1,138 @@
+package com.naruto.lib.common.media
+
+import android.content.ContentUris
+import android.database.Cursor
+import android.net.Uri
+import android.provider.MediaStore
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.utils.FileUtil
+
+/**
+ * @Description 按需指定查询列的 MediaStore 查询
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 调用方只声明需要的列（_ID 总会包含），减少 MediaStore 的查询与跨进程传输量；
+ * 每行通过同一个 Row 对象读取当前Cursor位置的值，不再为每行创建 MediaData，
+ * Uri 等对象在访问对应属性时才创建。Row 只在回调内有效，不可保存
+ */
+object MediaQuery {
+    /**
+     * 对应 FileUtil.MediaData 的全部列
+     */
+    val FULL_PROJECTION = arrayOf(
+        MediaStore.MediaColumns._ID,
+        MediaStore.MediaColumns.DISPLAY_NAME,
+        MediaStore.MediaColumns.RELATIVE_PATH,
+        MediaStore.MediaColumns.DURATION,
+        MediaStore.MediaColumns.DATE_ADDED,
+        MediaStore.MediaColumns.SIZE
+    )
+
+    /**
+     * 逐行读取
+     * @param projection Array<String> 需要的列，未包含 _ID 时会自动加上
+     * @param block 返回false时停止读取
+     * @return Int 读取的行数
+     */
+    fun forEach(
+        contentUri: Uri, projection: Array<String>, selection: String?,
+        selectionArgs: Array<String>?, sortOrder: String?, block: (Row) -> Boolean
+    ): Int {
+        val fullProjection = if (MediaStore.MediaColumns._ID in projection) projection
+        else projection + MediaStore.MediaColumns._ID
+        var count = 0
+        Global.getMainModuleContext().contentResolver
+            .query(contentUri, fullProjection, selection, selectionArgs, sortOrder)?.use {
+                val row = Row(it, contentUri)
+                while (it.moveToNext()) {
+                    count++
+                    if (!block(row)) break
+                }
+            }
+        return count
+    }
+
+    /**
+     * @param mapper 返回null的行不加入结果
+     */
+    fun <T> map(
+        contentUri: Uri, projection: Array<String>, selection: String?,
+        selectionArgs: Array<String>?, sortOrder: String?, mapper: (Row) -> T?
+    ): List<T> {
+        val list = ArrayList<T>()
+        forEach(contentUri, projection, selection, selectionArgs, sortOrder) { row ->
+            mapper(row)?.let { list.add(it) }
+            true
+        }
+        return list
+    }
+
+    /**
+     * 只读取第一行
+     */
+    fun <T> first(
+        contentUri: Uri, projection: Array<String>, selection: String?,
+        selectionArgs: Array<String>?, sortOrder: String?, mapper: (Row) -> T
+    ): T? {
+        var result: T? = null
+        forEach(contentUri, projection, selection, selectionArgs, sortOrder) {
+            result = mapper(it)
+            false
+        }
+        return result
+    }
+
+    /**
+     * @Description 当前行的视图
+     * @Author Naruto Yang
+     * @CreateDate 2026/10/18 0018
+     * @Note 读取未在查询中声明的列会抛出 IllegalStateException；toMediaData 中未声明的列为默认值
+     */
+    class Row internal constructor(private val cursor: Cursor, private val contentUri: Uri) {
+        private val idColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID)
+        private val nameColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DISPLAY_NAME)
+        private val relativePathColumn = cursor.getColumnIndex(MediaStore.MediaColumns.RELATIVE_PATH)
+        private val dataColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATA)
+        private val durationColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DURATION)
+        private val createTimeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED)
+        private val sizeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE)
+
+        val id: Long get() = cursor.getLong(idColumn)
+        val fileUri: Uri get() = ContentUris.withAppendedId(contentUri, id)
+        val fileName: String? get() = cursor.getString(checked(nameColumn, MediaStore.MediaColumns.DISPLAY_NAME))
+        val relativePath: String?
+            get() = cursor.getString(checked(relativePathColumn, MediaStore.MediaColumns.RELATIVE_PATH))
+        val absolutePath: String? get() = cursor.getString(checked(dataColumn, MediaStore.MediaColumns.DATA))
+        val duration: Int get() = cursor.getInt(checked(durationColumn, MediaStore.MediaColumns.DURATION))
+
+        /**
+         * DATE_ADDED，单位为秒
+         */
+        val createTime: Long get() = cursor.getLong(checked(createTimeColumn, MediaStore.MediaColumns.DATE_ADDED))
+        val size: Long get() = cursor.getLong(checked(sizeColumn, MediaStore.MediaColumns.SIZE))
+
+        fun getString(column: String): String? = cursor.getString(cursor.getColumnIndexOrThrow(column))
+
+        fun getLong(column: String): Long = cursor.getLong(cursor.getColumnIndexOrThrow(column))
+
+        fun isNull(column: String): Boolean = cursor.isNull(cursor.getColumnIndexOrThrow(column))
+
+        fun toMediaData(): FileUtil.MediaData {
+            val id = id
+            return FileUtil.MediaData(
+                id, ContentUris.withAppendedId(contentUri, id),
+                if (nameColumn >= 0) cursor.getString(nameColumn) else null,
+                if (dataColumn >= 0) cursor.getString(dataColumn) else null,
+                if (relativePathColumn >= 0) cursor.getString(relativePathColumn) else null,
+                if (durationColumn >= 0) cursor.getInt(durationColumn) else 0,
+                if (sizeColumn >= 0) cursor.getLong(sizeColumn) else 0,
+                if (createTimeColumn >= 0) cursor.getLong(createTimeColumn) else 0
+            )
+        }
+
+        private fun checked(index: Int, column: String): Int {
+            check(index >= 0) { "$column is not in projection" }
+            return index
+        }
+    }
+}
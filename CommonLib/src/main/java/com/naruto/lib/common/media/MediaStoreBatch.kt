@@ -0,0 +1,140 @@
+package com.naruto.lib.common.media
+
+import android.content.ContentProviderOperation
+import android.content.ContentProviderResult
+import android.content.ContentResolver
+import android.content.ContentUris
+import android.content.ContentValues
+import android.net.Uri
+import android.os.Build
+import android.provider.MediaStore
+import androidx.annotation.RequiresApi
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.utils.FileUtil
+import com.naruto.lib.common.utils.LogUtils
+
+/**
+ * @Description MediaStore 批量增删改
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 先收集操作，apply 时按 chunkSize 分批通过 ContentResolver.applyBatch 提交，每批一次跨进程调用；
+ * 某一批失败时（如其中某个文件无权限）该批改为逐条执行，保证其余操作不受影响。
+ * 结果与添加顺序一一对应。须在子线程调用 apply
+ */
+class MediaStoreBatch @JvmOverloads constructor(
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE
+) {
+    private val operations = ArrayList<ContentProviderOperation>()
+
+    init {
+        require(chunkSize > 0) { "chunkSize must be positive" }
+    }
+
+    val size: Int get() = operations.size
+
+    /**
+     * @return Int 操作序号，对应 apply 结果中的位置
+     */
+    fun insert(contentUri: Uri, values: ContentValues): Int =
+        add(ContentProviderOperation.newInsert(contentUri).withValues(values).build())
+
+    /**
+     * 在外部公共空间创建文件（与 FileUtil 中创建文件的字段一致）
+     * @param fileName String 文件名，需带后缀名
+     */
+    @RequiresApi(Build.VERSION_CODES.Q)
+    fun insertFile(mediaType: FileUtil.MediaType, relativePath: String, fileName: String): Int {
+        val values = ContentValues().apply {
+            put(MediaStore.MediaColumns.DISPLAY_NAME, fileName)
+            put(
+                MediaStore.MediaColumns.MIME_TYPE,
+                FileUtil.getMimeTypeFromExtension(fileName.substringAfterLast("."))
+            )
+            put(MediaStore.MediaColumns.DATE_TAKEN, System.currentTimeMillis())
+            put(
+                MediaStore.MediaColumns.RELATIVE_PATH,
+                FileUtil.getRelativePathInRoot(mediaType, relativePath)
+            )
+        }
+        return insert(FileUtil.getMediaStoreData(mediaType).contentUri!!, values)
+    }
+
+    fun update(uri: Uri, values: ContentValues): Int =
+        add(ContentProviderOperation.newUpdate(uri).withValues(values).build())
+
+    fun update(
+        contentUri: Uri, selection: String?, selectionArgs: Array<String>?, values: ContentValues
+    ): Int = add(
+        ContentProviderOperation.newUpdate(contentUri).withSelection(selection, selectionArgs)
+            .withValues(values).build()
+    )
+
+    fun delete(uri: Uri): Int = add(ContentProviderOperation.newDelete(uri).build())
+
+    fun delete(contentUri: Uri, selection: String?, selectionArgs: Array<String>?): Int =
+        add(ContentProviderOperation.newDelete(contentUri).withSelection(selection, selectionArgs).build())
+
+    private fun add(operation: ContentProviderOperation): Int {
+        operations.add(operation)
+        return operations.size - 1
+    }
+
+    /**
+     * 提交所有操作，提交后清空，可继续复用
+     * @return List<Result> 与添加顺序一一对应
+     */
+    fun apply(): List<Result> {
+        val resolver = Global.getMainModuleContext().contentResolver
+        val results = ArrayList<Result>(operations.size)
+        var start = 0
+        while (start < operations.size) {
+            val end = minOf(start + chunkSize, operations.size)
+            applyChunk(resolver, ArrayList(operations.subList(start, end)), results)
+            start = end
+        }
+        operations.clear()
+        return results
+    }
+
+    private fun applyChunk(
+        resolver: ContentResolver, chunk: ArrayList<ContentProviderOperation>,
+        results: MutableList<Result>
+    ) {
+        kotlin.runCatching { resolver.applyBatch(MediaStore.AUTHORITY, chunk) }
+            .onSuccess { array -> array.forEach { results.add(Result.of(it)) } }
+            .onFailure { e ->
+                LogUtils.e(TAG, "--->applyBatch failed, retrying ${chunk.size} operations one by one", e)
+                chunk.forEach { results.add(applySingle(resolver, it)) }
+            }
+    }
+
+    private fun applySingle(resolver: ContentResolver, operation: ContentProviderOperation): Result =
+        kotlin.runCatching { Result.of(resolver.applyBatch(MediaStore.AUTHORITY, arrayListOf(operation))[0]) }
+            .getOrElse { Result(null, 0, it) }
+
+    /**
+     * @param uri Uri? 插入操作的新文件Uri
+     * @param count Int 更新/删除操作影响的条数
+     * @param error Throwable? 执行失败的原因
+     */
+    class Result(val uri: Uri?, val count: Int, val error: Throwable?) {
+        val isSuccess: Boolean get() = error == null && (uri != null || count > 0)
+
+        /**
+         * 插入操作的新文件id，非插入操作或失败时为-1
+         */
+        val id: Long get() = uri?.let { kotlin.runCatching { ContentUris.parseId(it) }.getOrNull() } ?: -1
+
+        override fun toString(): String = "Result(uri=$uri, count=$count, error=$error)"
+
+        internal companion object {
+            fun of(result: ContentProviderResult): Result =
+                Result(result.uri, result.count ?: if (result.uri != null) 1 else 0, null)
+        }
+    }
+
+    companion object {
+        private const val TAG = "MediaStoreBatch"
+        const val DEFAULT_CHUNK_SIZE = 100
+    }
+}
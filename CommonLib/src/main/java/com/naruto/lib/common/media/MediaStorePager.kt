@@ -0,0 +1,124 @@
+package com.naruto.lib.common.media
+
+import android.content.ContentResolver
+import android.net.Uri
+import android.os.Build
+import android.os.Bundle
+import android.provider.MediaStore
+import com.naruto.lib.common.Global
+import com.naruto.lib.common.coroutine.CommonScope
+import com.naruto.lib.common.utils.FileUtil
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+
+/**
+ * @Description MediaStore 分页查询
+ * @Author Naruto Yang
+ * @CreateDate 2026/10/18 0018
+ * @Note 按 DATE_ADDED、_ID 倒序（最新的在前），每取一页查询一次并立即关闭Cursor，只有被取到的页才会查询。
+ * 分页使用上一页最后一条的(DATE_ADDED, _ID)作为下一页的起点（keyset），而不是OFFSET：
+ * 翻到后面的页不必重新扫描前面的行，翻页期间有文件增删也不会重复或遗漏。
+ * 条数限制在Android 10及以上通过 QUERY_ARG_LIMIT 传递，之前的版本拼接在排序语句后。
+ * Android 10以下没有 RELATIVE_PATH、DURATION 列，对应字段为空，absolutePath 取自 DATA 列
+ */
+object MediaStorePager {
+    const val DEFAULT_PAGE_SIZE = 200
+    private const val SORT_ORDER =
+        MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC"
+    private const val KEYSET_SELECTION = "(" + MediaStore.MediaColumns.DATE_ADDED + "<? OR (" +
+            MediaStore.MediaColumns.DATE_ADDED + "=? AND " + MediaStore.MediaColumns._ID + "<?))"
+    private val PROJECTION: Array<String> = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) arrayOf(
+        MediaStore.MediaColumns._ID,
+        MediaStore.MediaColumns.DISPLAY_NAME,
+        MediaStore.MediaColumns.RELATIVE_PATH,
+        MediaStore.MediaColumns.DURATION,
+        MediaStore.MediaColumns.DATE_ADDED,
+        MediaStore.MediaColumns.SIZE
+    ) else arrayOf(
+        MediaStore.MediaColumns._ID,
+        MediaStore.MediaColumns.DISPLAY_NAME,
+        MediaStore.MediaColumns.DATA,
+        MediaStore.MediaColumns.DATE_ADDED,
+        MediaStore.MediaColumns.SIZE
+    )
+
+    /**
+     * 分页获取文件，遍历时才查询
+     *
+     * @param contentUri MediaStore集合Uri，见 FileUtil.getMediaStoreData
+     * @param selection
+     * @param selectionArgs
+     * @param pageSize 每页条数
+     * @param fileInfoCreator 返回null的条目不加入结果（该页条数可能少于pageSize）
+     * @return 每个元素为一页，createTime 为 DATE_ADDED，单位为秒
+     */
+    fun <T> pages(
+        contentUri: Uri, selection: String?, selectionArgs: Array<String>?,
+        pageSize: Int = DEFAULT_PAGE_SIZE, fileInfoCreator: (FileUtil.MediaData) -> T?
+    ): Sequence<List<T>> {
+        require(pageSize > 0) { "pageSize must be positive" }
+        return sequence {
+            val resolver = Global.getMainModuleContext().contentResolver
+            var last: FileUtil.MediaData? = null
+            while (true) {
+                val list = ArrayList<T>(pageSize)
+                val count = queryPage(resolver, contentUri, selection, selectionArgs, pageSize, last) {
+                    last = it
+                    fileInfoCreator(it)?.let { item -> list.add(item) }
+                }
+                if (list.isNotEmpty()) yield(list)
+                if (count < pageSize) break
+            }
+        }
+    }
+
+    /**
+     * 同 pages，在 CommonScope.IO 中查询，收集方取消后不再查询后续页
+     */
+    fun <T> pageFlow(
+        contentUri: Uri, selection: String?, selectionArgs: Array<String>?,
+        pageSize: Int = DEFAULT_PAGE_SIZE, fileInfoCreator: (FileUtil.MediaData) -> T?
+    ): Flow<List<T>> = flow {
+        pages(contentUri, selection, selectionArgs, pageSize, fileInfoCreator).forEach { emit(it) }
+    }.flowOn(CommonScope.IO)
+
+    /**
+     * @param after 上一页最后一条，为null时查询第一页
+     * @return Int 本页查到的行数
+     */
+    private inline fun queryPage(
+        resolver: ContentResolver, contentUri: Uri, selection: String?,
+        selectionArgs: Array<String>?, pageSize: Int, after: FileUtil.MediaData?,
+        block: (FileUtil.MediaData) -> Unit
+    ): Int {
+        var fullSelection = selection
+        var fullArgs = selectionArgs
+        if (after != null) {
+            val time = after.createTime.toString()
+            fullSelection = if (selection.isNullOrEmpty()) KEYSET_SELECTION
+            else "($selection) AND $KEYSET_SELECTION"
+            fullArgs = (selectionArgs ?: emptyArray()) + arrayOf(time, time, after.id.toString())
+        }
+        val cursor = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            val args = Bundle().apply {
+                putString(ContentResolver.QUERY_ARG_SQL_SELECTION, fullSelection)
+                putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, fullArgs)
+                putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER)
+                putInt(ContentResolver.QUERY_ARG_LIMIT, pageSize)
+            }
+            resolver.query(contentUri, PROJECTION, args, null)
+        } else resolver.query(
+            contentUri, PROJECTION, fullSelection, fullArgs, "$SORT_ORDER LIMIT $pageSize"
+        )
+        var count = 0
+        cursor?.use {
+            val row = MediaQuery.Row(it, contentUri)
+            while (it.moveToNext()) {
+                count++
+                block(row.toMediaData())
+            }
+        }
+        return count
+    }
+}
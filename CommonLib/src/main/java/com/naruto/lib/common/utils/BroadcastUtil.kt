@@ -22,7 +22,7 @@ object BroadcastUtil {
         if (cls != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {//8.0及以上的静态注册的广播需要指定component，非静态注册的广播cls必须为null
             intent.component = ComponentName(context, cls)
         }
-        LogUtils.i("--->create action $action")
+        LogUtils.i { "--->create action $action" }
         return intent
     }
 
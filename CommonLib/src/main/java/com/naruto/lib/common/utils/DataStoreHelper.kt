@@ -13,7 +13,8 @@ import androidx.datastore.preferences.core.stringPreferencesKey
 import androidx.datastore.preferences.core.stringSetPreferencesKey
 import androidx.datastore.preferences.preferencesDataStore
 import com.naruto.lib.common.Global
-import com.naruto.lib.common.TopFunction.runInCoroutine
+import com.naruto.lib.common.coroutine.CommonScope
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.collect
 import kotlinx.coroutines.flow.distinctUntilChanged
@@ -119,11 +120,12 @@ open class DataStoreHelper(private val dataStore: DataStore<Preferences>) {
      * @param key String
      * @param func Function1<String, Flow<T>> 获取DataStore数据的方法，例如{ CommonDataStore.getLongValue(it, 0) }
      * @param callback Function1<T, Unit>
+     * @return Job 不再需要监听时取消
      */
     fun <T> listenDataStoreDataChange(
         key: String, func: DataStoreHelper.(String) -> Flow<T>, callback: (T) -> Unit
-    ) {
-        runInCoroutine { func(key).collect { callback(it);LogUtils.i("--->$key has changed：$it") } }
+    ): Job = CommonScope.launchListener("DataStore:$key") {
+        func(key).collect { callback(it);LogUtils.i { "--->$key has changed：$it" } }
     }
 
     suspend fun clear() {
@@ -5,6 +5,7 @@ import android.annotation.SuppressLint
 import android.app.Activity
 import android.app.Dialog
 import android.content.*
+import android.content.pm.PackageManager
 import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.net.Uri
@@ -17,26 +18,40 @@ import android.util.Pair
 import android.view.View
 import android.webkit.MimeTypeMap
 import androidx.annotation.RequiresApi
+import androidx.core.content.ContextCompat
 import androidx.core.content.FileProvider.getUriForFile
 import androidx.datastore.core.DataStore
 import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.preferencesDataStore
 import androidx.documentfile.provider.DocumentFile
 import com.naruto.lib.common.Global
+import com.naruto.lib.common.TopFunction.callbackOnCurrentThread
 import com.naruto.lib.common.TopFunction.runInCoroutine
+import com.naruto.lib.common.coroutine.CommonScope
 import com.naruto.lib.common.helper.PermissionHelper
+import com.naruto.lib.common.media.MediaPathIndex
+import com.naruto.lib.common.media.MediaQuery
+import com.naruto.lib.common.media.MediaStoreBatch
+import com.naruto.lib.common.media.MediaStorePager
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.first
-import kotlinx.coroutines.flow.single
-import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import java.io.*
 import java.util.*
+import kotlin.coroutines.coroutineContext
+import kotlin.coroutines.resume
 
 
 /**
  * @Description
  * @Author Naruto Yang
  * @CreateDate 2022/1/17 0017
- * @Note
+ * @Note 挂起版本统一命名为"await"+对应的回调/同步方法名（如 awaitWriteDataToExternalPublicSpaceFile），
+ * 在 CommonScope.IO 中执行；Android 9及以下需要时会申请存储权限，最多等待 PERMISSION_TIMEOUT_MILLIS
  */
 object FileUtil {
     val permissions = arrayOf(
@@ -46,6 +61,10 @@ object FileUtil {
     val SELECTION_SPECIFY_FILE = MediaStore.MediaColumns.DISPLAY_NAME + "=? and " +
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) MediaStore.MediaColumns.RELATIVE_PATH + "=?"
             else MediaStore.Images.Media.DATA + " like ?"
+    private val PROJECTION_ID = arrayOf(MediaStore.MediaColumns._ID)
+    private val PROJECTION_NAME = arrayOf(MediaStore.MediaColumns.DISPLAY_NAME)
+    private const val COPY_BUFFER_SIZE = 64 * 1024
+    private const val PERMISSION_TIMEOUT_MILLIS = 60 * 1000L
 
     /**
      * @param relativePath    相对根目录（/storage/emulated/0/）的路径，不以“/”开头，但以“/”结尾
@@ -161,63 +180,215 @@ object FileUtil {
         writeData(stream, { getOutputStream(outputUri, "w") }, callback)
 
     /**
-     * 写文件
+     * 写文件（挂起版本），在 CommonScope.IO 中分段写入，每段之间检查协程是否已取消
+     *
+     * @param bytes
+     * @param uri
+     * @param isAppend 是否追加模式
+     * @return 是否写入成功
+     */
+    suspend fun awaitWriteData(bytes: ByteArray, uri: Uri, isAppend: Boolean): Boolean =
+        writeToUri(uri, isAppend) { output ->
+            var offset = 0
+            while (offset < bytes.size) {
+                coroutineContext.ensureActive()
+                val length = minOf(COPY_BUFFER_SIZE, bytes.size - offset)
+                output.write(bytes, offset, length)
+                offset += length
+            }
+        }
+
+    /**
+     * 将输入流写入文件（挂起版本），见 awaitWriteData(ByteArray, Uri, Boolean)
+     * 输入流由调用方关闭
+     */
+    suspend fun awaitWriteData(input: InputStream, uri: Uri, isAppend: Boolean): Boolean =
+        writeToUri(uri, isAppend) { output -> copyCancellable(input, output) }
+
+    private suspend fun writeToUri(
+        uri: Uri, isAppend: Boolean, writeFunc: suspend (OutputStream) -> Unit
+    ): Boolean = withContext(CommonScope.IO) {
+        kotlin.runCatching {
+            getOutputStream(uri, isAppend)?.use { writeFunc(it);it.flush();true } ?: false
+        }.onFailure {
+            if (it is CancellationException) throw it
+            LogUtils.e("--->write $uri failed", it)
+        }.getOrDefault(false)
+    }
+
+    /**
+     * 分段复制，每段之间检查协程是否已取消
+     * @return 复制的字节数
+     */
+    private suspend fun copyCancellable(input: InputStream, output: OutputStream): Long {
+        val buffer = ByteArray(COPY_BUFFER_SIZE)
+        var total = 0L
+        while (true) {
+            coroutineContext.ensureActive()
+            val count = input.read(buffer)
+            if (count < 0) break
+            output.write(buffer, 0, count)
+            total += count
+        }
+        return total
+    }
+
+    /**
+     * 写文件，不存在则创建
+     *
+     * @param callback 回到调用线程回调（调用线程没有Looper时在IO线程回调），见 callbackOnCurrentThread
      */
     fun writeDataToExternalPublicSpaceFile(
         bytes: ByteArray, mediaType: MediaType, relativePath: String, fileName: String,
         isAppend: Boolean, callback: ((Boolean) -> Unit)?
     ) {
+        val onResult = callback?.let { callbackOnCurrentThread(it) }
+        runInCoroutine(name = "WriteFile") {
+            val result = kotlin.runCatching {
+                awaitWriteDataToExternalPublicSpaceFile(bytes, mediaType, relativePath, fileName, isAppend)
+            }.onFailure {
+                if (it is CancellationException) throw it
+                LogUtils.e("--->write $fileName failed", it)
+            }.getOrDefault(false)
+            onResult?.invoke(result)
+        }
+    }
+
+    /**
+     * 写文件，不存在则创建（挂起版本）
+     *
+     * @return 是否写入成功
+     */
+    suspend fun awaitWriteDataToExternalPublicSpaceFile(
+        bytes: ByteArray, mediaType: MediaType, relativePath: String, fileName: String,
+        isAppend: Boolean
+    ): Boolean {
+        val uri = awaitGetOrCreateFileInExternalPublicSpace(mediaType, relativePath, fileName)
+            ?: return false
+        return awaitWriteData(bytes, uri, isAppend)
+    }
+
+    /**
+     * 获取外部公共空间的文件，不存在则创建
+     *
+     * @param mediaType
+     * @param relativePath
+     * @param fileName
+     * @param callback 文件Uri，获取及创建均失败时为null，回到调用线程回调（见 callbackOnCurrentThread）
+     */
+    fun getOrCreateFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileName: String, callback: (Uri?) -> Unit
+    ) {
+        val onResult = callbackOnCurrentThread(callback)
+        runInCoroutine(name = "GetOrCreateFile") {
+            val uri = kotlin.runCatching {
+                awaitGetOrCreateFileInExternalPublicSpace(mediaType, relativePath, fileName)
+            }.onFailure {
+                if (it is CancellationException) throw it
+                LogUtils.e("--->getOrCreate $fileName failed", it)
+            }.getOrNull()
+            onResult(uri)
+        }
+    }
+
+    /**
+     * 获取外部公共空间的文件，不存在则创建（挂起版本）
+     *
+     * @return 文件Uri，获取及创建均失败时为null
+     */
+    suspend fun awaitGetOrCreateFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileName: String
+    ): Uri? = withContext(CommonScope.IO) {
         val dataStoreKey = "$relativePath->$fileName"
         //系统中有可能已经存在同名文件A且当前app无法访问（例如卸载重装后），此时会创建新文件A(1)，但下次访问肯定还是无法访问A，为了避免创建A(2)，每次发现存在同名文件时记录原文件名与新文件名的映射
-        val realFileName =
-            runBlocking { FileDataStore.getStringValue(dataStoreKey, fileName).first() }
-        val uri = getFileInExternalPublicSpace(mediaType, relativePath, realFileName)
-        if (uri == null) {//找不到目标文件则创建新文件（有几种情况：1.系统不存在目标文件。2.系统已存在同名文件A且本app无法访问，此时会创建“A(1)”。3.“A(1)”也无法访问了，此时有可能连之前的同名文件A都没有了，可以尝试创建“A”）
-            createFileInExternalPublicSpace(mediaType, relativePath, fileName) { uri0 ->
-                uri0?.let {
-                    runInCoroutine {//判断新文件名是否与目标文件名是否一致，如果不一致，说明目标文件已无法访问，需记录原文件名与新文件名的映射
-                        getContentResolver().query(
-                            it, arrayOf(MediaStore.MediaColumns.DISPLAY_NAME), null, null
-                        ).use { cursor ->
-                            if (cursor == null) {
-                                LogUtils.e("--->找不到新文件")
-                                return@use
-                            }
-                            val nameColumn =
-                                cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DISPLAY_NAME)
-                            var name: String? = null
-                            while (cursor.moveToNext()) {
-                                name = cursor.getString(nameColumn)
-                                LogUtils.i("--->requireFileName=$realFileName；newFileName=$name")
-                            }
-                            if (name != null && name != realFileName)
-                                FileDataStore.setStringValue(dataStoreKey, name)
-                        }
-                    }
-                    //写入数据
-                    writeData(
-                        bytes, { getOutputStream(it, isAppend) }, callback
-                    )
+        val realFileName = FileDataStore.getStringValue(dataStoreKey, fileName).first()
+        getFileInExternalPublicSpace(mediaType, relativePath, realFileName)
+            ?.let { return@withContext it }
+        //找不到目标文件则创建新文件（有几种情况：1.系统不存在目标文件。2.系统已存在同名文件A且本app无法访问，此时会创建“A(1)”。3.“A(1)”也无法访问了，此时有可能连之前的同名文件A都没有了，可以尝试创建“A”）
+        awaitCreateFileInExternalPublicSpace(mediaType, relativePath, fileName)?.also {
+            //判断新文件名是否与目标文件名是否一致，如果不一致，说明目标文件已无法访问，需记录原文件名与新文件名的映射
+            val name = kotlin.runCatching {
+                getContentResolver().query(it, PROJECTION_NAME, null, null, null)?.use { cursor ->
+                    if (cursor.moveToFirst()) cursor.getString(0) else null
                 }
-            }
-        } else writeData(
-            bytes, { getOutputStream(uri, isAppend) }, callback
-        )
+            }.getOrNull()
+            LogUtils.i { "--->requireFileName=$realFileName；newFileName=$name" }
+            if (name == null) LogUtils.e("--->找不到新文件")
+            else if (name != realFileName) FileDataStore.setStringValue(dataStoreKey, name)
+        }
     }
 
 
     /**
      * 读取文件内容
      * @param uri Uri
-     * @param block Function1<InputStream?, Unit>
+     * @param block Function1<InputStream?, Unit> 在IO线程回调（输入流在回调返回后关闭，须在回调内读取），读取失败时参数为null
      */
     fun readDataFromFile(uri: Uri, block: (InputStream?) -> Unit) {
-        val func = { getContentResolver().openInputStream(uri).use { block(it) } }
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
-            doWithStoragePermission({ func() }, { block(null) })
-        } else func()
+        runInCoroutine(name = "ReadFile") {
+            var invoked = false
+            awaitReadDataFromFile(uri) { invoked = true;block(it) }
+            if (!invoked) block(null)
+        }
     }
 
+    /**
+     * 读取文件内容（挂起版本），Android 9及以下需要时会申请存储权限
+     * @param uri Uri
+     * @param block 在 CommonScope.IO 中执行，输入流在执行后关闭
+     * @return 读取失败时为null
+     */
+    suspend fun <T> awaitReadDataFromFile(uri: Uri, block: suspend (InputStream) -> T): T? {
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P && !awaitPermissions(permissions))
+            return null
+        return withContext(CommonScope.IO) {
+            kotlin.runCatching {
+                getContentResolver().openInputStream(uri)?.use { block(it) }
+            }.onFailure {
+                if (it is CancellationException) throw it
+                LogUtils.e("--->read $uri failed", it)
+            }.getOrNull()
+        }
+    }
+
+    /**
+     * 读取文件全部内容（挂起版本），分段读取，每段之间检查协程是否已取消
+     * @return 读取失败时为null
+     */
+    suspend fun awaitReadDataFromFile(uri: Uri): ByteArray? = awaitReadDataFromFile(uri) { input ->
+        ByteArrayOutputStream().also { copyCancellable(input, it) }.toByteArray()
+    }
+
+    /**
+     * 检查权限，未授权时按 autoRequest 申请，等待用户操作超过 PERMISSION_TIMEOUT_MILLIS 时视为未授权
+     * @return 是否已授权
+     */
+    internal suspend fun awaitPermissions(
+        permissions: Array<String>, autoRequest: Boolean = true
+    ): Boolean {
+        val context = getContext()
+        if (permissions.all {
+                ContextCompat.checkSelfPermission(context, it) == PackageManager.PERMISSION_GRANTED
+            }) return true
+        if (!autoRequest) return false
+        return withTimeoutOrNull(PERMISSION_TIMEOUT_MILLIS) { requestPermissions(permissions) } ?: false
+    }
+
+    private suspend fun requestPermissions(permissions: Array<String>): Boolean =
+        suspendCancellableCoroutine { continuation ->
+            Global.doWithPermission(
+                object : PermissionHelper.RequestPermissionsCallback(Pair(null, permissions)) {
+                    override fun onGranted() {
+                        if (continuation.isActive) continuation.resume(true)
+                    }
+
+                    override fun onDenied(context: Context?, deniedPermissions: MutableList<String>?) {
+                        if (continuation.isActive) continuation.resume(false)
+                        super.onDenied(context, deniedPermissions)
+                    }
+                })
+        }
+
 
     /**
      * 截取视图保存文件
@@ -242,7 +413,7 @@ object FileUtil {
      */
     fun getMimeTypeFromExtension(extension: String?): String? {
         return MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension).also {
-            LogUtils.i("--->extension=$extension;MimeType=$it")
+            LogUtils.i { "--->extension=$extension;MimeType=$it" }
         }
     }
 
@@ -464,27 +635,43 @@ object FileUtil {
      * @param mediaType
      * @param relativePath
      * @param fileName     文件名，需带后缀名
-     * @return
+     * @param callback 回到调用线程回调（调用线程没有Looper时在IO线程回调），见 callbackOnCurrentThread
      */
     private fun createFileInExternalPublicSpace(
         mediaType: MediaType, relativePath: String, fileName: String, callback: (Uri?) -> Unit
     ) {
-        if (TextUtils.isEmpty(fileName)) {
-            callback(null)
-            return
+        val onResult = callbackOnCurrentThread(callback)
+        runInCoroutine(name = "CreateFile") {
+            onResult(awaitCreateFileInExternalPublicSpace(mediaType, relativePath, fileName))
         }
+    }
+
+    /**
+     * 在外部公共存储空间创建文件（挂起版本），Android 9及以下需要时会申请存储权限
+     *
+     * @param mediaType
+     * @param relativePath
+     * @param fileName     文件名，需带后缀名
+     * @return 创建失败时为null
+     */
+    suspend fun awaitCreateFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileName: String
+    ): Uri? {
+        if (TextUtils.isEmpty(fileName)) return null
         val mediaData: MediaData = getMediaStoreData(mediaType)
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
-            doWithStoragePermission({
+            if (!awaitPermissions(permissions)) return null
+            return withContext(CommonScope.IO) {
                 val folderPath: String =
                     getPathFromExternalPublicSpace(mediaData.directory!!, relativePath)
-                callback(createFile(folderPath, fileName))
-            }, { callback(null) })
-        } else {
+                createFile(folderPath, fileName)
+            }
+        }
+        return withContext(CommonScope.IO) {
             kotlin.runCatching {
                 val path = getRelativePathInRoot(mediaData.directory!!, relativePath)
-                callback(createFile(mediaData.contentUri!!, path, fileName))
-            }.onFailure { it.printStackTrace() }
+                createFile(mediaData.contentUri!!, path, fileName)
+            }.onFailure { it.printStackTrace() }.getOrNull()
         }
     }
 
@@ -568,45 +755,40 @@ object FileUtil {
         mediaData: MediaData, selection: String?, selectionArgs: Array<String>?, sortOrder: String?,
         fileInfoCreator: (MediaData) -> T
     ): List<T> {
-        val projection = arrayOf(
-            MediaStore.MediaColumns._ID,
-            MediaStore.MediaColumns.DISPLAY_NAME,
-            MediaStore.MediaColumns.RELATIVE_PATH,
-            MediaStore.MediaColumns.DURATION,
-            MediaStore.MediaColumns.DATE_ADDED,
-            MediaStore.MediaColumns.SIZE
-        )
-        val list: MutableList<T> = ArrayList()
-        getContentResolver().query(
-            mediaData.contentUri!!, projection, selection, selectionArgs, sortOrder
-        ).use { cursor ->
-            if (cursor == null) return list
-            val idColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID)
-            val nameColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DISPLAY_NAME)
-            val relativePathColumn =
-                cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.RELATIVE_PATH)
-            val durationColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DURATION)
-            val createTimeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED)
-            val sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.SIZE)
-            while (cursor.moveToNext()) {
-                val id = cursor.getLong(idColumn)
-                val name = cursor.getString(nameColumn)
-                val relativePath = cursor.getString(relativePathColumn)
-                val duration = cursor.getInt(durationColumn)
-                val size = cursor.getInt(sizeColumn).toLong()
-                val createTime = cursor.getLong(createTimeColumn)
-                val fileUri = ContentUris.withAppendedId(mediaData.contentUri, id)
-                val data = MediaData(
-                    id, fileUri, name, null, relativePath, duration, size, createTime
-                )
-                fileInfoCreator(data)?.run { list.add(this) }
-            }
-        }
-        return list
+        return MediaQuery.map(
+            mediaData.contentUri!!, MediaQuery.FULL_PROJECTION, selection, selectionArgs, sortOrder
+        ) { fileInfoCreator(it.toMediaData()) }
     }
 
     /**
-     * 获取外部公共空间的文件
+     * 分页获取外部公共存储空间文件，遍历时才逐页查询，适用于文件较多的目录，见 MediaStorePager
+     *
+     * @param mediaData
+     * @param selection
+     * @param selectionArgs
+     * @param pageSize
+     * @param fileInfoCreator 返回null的条目不加入结果
+     * @return 每个元素为一页，按添加时间倒序
+     */
+    fun <T> pageFilesInExternalPublicSpace(
+        mediaData: MediaData, selection: String?, selectionArgs: Array<String>?,
+        pageSize: Int = MediaStorePager.DEFAULT_PAGE_SIZE, fileInfoCreator: (MediaData) -> T?
+    ): Sequence<List<T>> = MediaStorePager.pages(
+        mediaData.contentUri!!, selection, selectionArgs, pageSize, fileInfoCreator
+    )
+
+    /**
+     * 同 pageFilesInExternalPublicSpace，在IO线程查询
+     */
+    fun <T> pageFilesFlowInExternalPublicSpace(
+        mediaData: MediaData, selection: String?, selectionArgs: Array<String>?,
+        pageSize: Int = MediaStorePager.DEFAULT_PAGE_SIZE, fileInfoCreator: (MediaData) -> T?
+    ): Flow<List<T>> = MediaStorePager.pageFlow(
+        mediaData.contentUri!!, selection, selectionArgs, pageSize, fileInfoCreator
+    )
+
+    /**
+     * 获取外部公共空间的文件，已通过 MediaPathIndex.enable 开启缓存的类型优先从缓存获取
      *
      * @param mediaType
      * @param relativePath
@@ -619,13 +801,12 @@ object FileUtil {
         return if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
             val folderPath: String = getPathFromExternalPublicSpace(mediaType, relativePath)
             getUriForFile(File(folderPath + fileName))
-        } else {
+        } else MediaPathIndex.get(mediaType, relativePath, fileName) {
             val mediaData: MediaData = getMediaStoreData(mediaType)
-            val selection = SELECTION_SPECIFY_FILE
             val args = arrayOf(fileName, getRelativePathInRoot(mediaData.directory!!, relativePath))
-            val list: List<Uri> =
-                getFileInExternalPublicSpace(mediaData, selection, args, null) { it.fileUri!! }
-            if (list.isEmpty()) null else list[0]
+            MediaQuery.first(mediaData.contentUri!!, PROJECTION_ID, SELECTION_SPECIFY_FILE, args, null) {
+                it.fileUri
+            }
         }
     }
 
@@ -637,23 +818,86 @@ object FileUtil {
      * @param relativePath
      * @param myFileFilter
      * @param fileInfoCreator
-     * @param callback
+     * @param callback 回到调用线程回调（调用线程没有Looper时在IO线程回调），见 callbackOnCurrentThread
      * @param <T>
     </T> */
     fun <T> getFileInExternalPublicSpace(
         mediaType: MediaType, relativePath: String, myFileFilter: MyFileFilter?,
         fileInfoCreator: (MediaData) -> T, callback: (List<T>) -> Unit
     ) {
+        val onResult = callbackOnCurrentThread(callback)
+        runInCoroutine(name = "QueryFiles") {
+            onResult(awaitGetFileInExternalPublicSpace(mediaType, relativePath, myFileFilter, fileInfoCreator))
+        }
+    }
+
+    /**
+     * 获取外部公共空间的文件（挂起版本），Android 9及以下需要时会申请读取权限
+     *
+     * @param mediaType
+     * @param relativePath
+     * @param myFileFilter 为null时获取全部文件
+     * @param fileInfoCreator
+     * @return 未授权时为空
+     */
+    suspend fun <T> awaitGetFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, myFileFilter: MyFileFilter?,
+        fileInfoCreator: (MediaData) -> T
+    ): List<T> {
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
+            if (!awaitPermissions(arrayOf(Manifest.permission.READ_EXTERNAL_STORAGE)))
+                return emptyList()
             val folderPath: String = getPathFromExternalPublicSpace(mediaType, relativePath)
-            getFileInExternalSpace(folderPath, myFileFilter, fileInfoCreator, callback)
+            return withContext(CommonScope.IO) {
+                listFilesInFolder(folderPath, myFileFilter, fileInfoCreator)
+            }
+        }
+        val data = getMediaStoreData(mediaType)
+        val selection = MediaStore.MediaColumns.RELATIVE_PATH + "=?"
+        val args = arrayOf(getRelativePathInRoot(data.directory!!, relativePath))
+        return withContext(CommonScope.IO) {
+            if (myFileFilter == null)
+                getFileInExternalPublicSpace(data, selection, args, null, fileInfoCreator)
+            else myFileFilter.doForMediaStore(selection, args) { f_slc, f_args ->
+                getFileInExternalPublicSpace(data, f_slc, f_args, null, fileInfoCreator)
+            }
+        }
+    }
+
+    /**
+     * 获取外部公共空间的文件（挂起版本），见 getFileInExternalPublicSpace(MediaType, String, String)
+     *
+     * @return 文件Uri，不存在时为null
+     */
+    suspend fun awaitGetFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileName: String
+    ): Uri? = withContext(CommonScope.IO) {
+        getFileInExternalPublicSpace(mediaType, relativePath, fileName)
+    }
+
+
+    /**
+     * 列出外部公共空间指定目录下的文件（同步执行，Android 9及以下需已获得存储权限）
+     *
+     * @param mediaType
+     * @param relativePath
+     * @return createTime 单位为毫秒
+     */
+    fun listFilesInExternalPublicSpace(mediaType: MediaType, relativePath: String): List<MediaData> {
+        return if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
+            val folder = File(getPathFromExternalPublicSpace(mediaType, relativePath))
+            folder.listFiles()?.filter { it.isFile }?.map { f ->
+                MediaData(
+                    0, getUriForFile(f), f.name, f.absolutePath, relativePath, 0, f.length(),
+                    f.lastModified()
+                )
+            } ?: emptyList()
         } else {
             val data = getMediaStoreData(mediaType)
             val selection = MediaStore.MediaColumns.RELATIVE_PATH + "=?"
             val args = arrayOf(getRelativePathInRoot(data.directory!!, relativePath))
-
-            myFileFilter?.doForMediaStore(selection, args) { f_slc, f_args ->
-                callback(getFileInExternalPublicSpace(data, f_slc, f_args, null, fileInfoCreator))
+            getFileInExternalPublicSpace(data, selection, args, null) {
+                it.copy(createTime = it.createTime * 1000)//DATE_ADDED 单位为秒
             }
         }
     }
@@ -691,7 +935,7 @@ object FileUtil {
         }
 
         runInCoroutine {
-            val treeUriString = FileDataStore.getStringValue(spKey).single()
+            val treeUriString = FileDataStore.getStringValue(spKey).first()
             if (!TextUtils.isEmpty(treeUriString)) {
                 kotlin.runCatching {
                     val treeUri = Uri.parse(treeUriString)
@@ -772,27 +1016,36 @@ object FileUtil {
             Pair(null, arrayOf(Manifest.permission.READ_EXTERNAL_STORAGE))
         ) {
             override fun onGranted() {
-                val list: MutableList<T> = ArrayList()
-                val folder = File(folderPath)
-                val files: Array<File>? = if (myFileFilter == null) folder.listFiles()
-                else { //有过滤条件
-                    if (myFileFilter.filenameFilter != null)
-                        folder.listFiles(myFileFilter.filenameFilter)
-                    else folder.listFiles(myFileFilter.fileFilter)
-                }
-                var mediaData: MediaData
-                files?.takeIf { files.isNotEmpty() }?.forEach { f ->
-                    mediaData = MediaData(
-                        0, getUriForFile(f), f.name, f.absolutePath, null, 0, f.length(),
-                        f.lastModified()
-                    )
-                    list.add(fileInfoCreator(mediaData))
-                }
-                callback(list)
+                callback(listFilesInFolder(folderPath, myFileFilter, fileInfoCreator))
             }
         })
     }
 
+    /**
+     * 列出文件夹中的文件，需已获得存储权限
+     */
+    private fun <T> listFilesInFolder(
+        folderPath: String, myFileFilter: MyFileFilter?, fileInfoCreator: (MediaData) -> T
+    ): List<T> {
+        val list: MutableList<T> = ArrayList()
+        val folder = File(folderPath)
+        val files: Array<File>? = if (myFileFilter == null) folder.listFiles()
+        else { //有过滤条件
+            if (myFileFilter.filenameFilter != null)
+                folder.listFiles(myFileFilter.filenameFilter)
+            else folder.listFiles(myFileFilter.fileFilter)
+        }
+        var mediaData: MediaData
+        files?.takeIf { files.isNotEmpty() }?.forEach { f ->
+            mediaData = MediaData(
+                0, getUriForFile(f), f.name, f.absolutePath, null, 0, f.length(),
+                f.lastModified()
+            )
+            list.add(fileInfoCreator(mediaData))
+        }
+        return list
+    }
+
 
     /**
      * 删除外部公共空间的文件
@@ -876,6 +1129,78 @@ object FileUtil {
     }
 
 
+    /**
+     * 批量创建外部公共空间的文件，通过 MediaStoreBatch 分批提交
+     *
+     * @param mediaType
+     * @param relativePath
+     * @param fileNames 文件名，需带后缀名
+     * @return 与 fileNames 顺序一致，创建失败为null
+     */
+    @RequiresApi(api = Build.VERSION_CODES.Q)
+    fun createFilesInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileNames: List<String>
+    ): List<Uri?> {
+        val batch = MediaStoreBatch()
+        fileNames.forEach { batch.insertFile(mediaType, relativePath, it) }
+        return batch.apply().map { it.uri }
+    }
+
+    /**
+     * 批量删除Uri对应的资源，Android 10及以上通过 MediaStoreBatch 分批提交
+     *
+     * @param uris
+     * @return 与 uris 顺序一致，是否删除成功
+     */
+    fun deleteFilesInExternalPublicSpace(uris: List<Uri>): List<Boolean> {
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) return uris.map { delete(it) }
+        val batch = MediaStoreBatch()
+        uris.forEach { batch.delete(it) }
+        return batch.apply().map { it.isSuccess }
+    }
+
+    /**
+     * 删除外部公共空间的文件（挂起版本），见 deleteFileInExternalPublicSpace(MediaType, String, String)
+     *
+     * @return 是否删除成功
+     */
+    suspend fun awaitDeleteFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, fileName: String
+    ): Boolean = withContext(CommonScope.IO) {
+        deleteFileInExternalPublicSpace(mediaType, relativePath, fileName)
+    }
+
+    /**
+     * 删除外部公共空间的文件（挂起版本），Android 9及以下需要时会申请存储权限
+     *
+     * @param mediaType
+     * @param relativePath
+     * @param filter
+     * @return 是否删除成功
+     */
+    suspend fun awaitDeleteFileInExternalPublicSpace(
+        mediaType: MediaType, relativePath: String, filter: MyFileFilter
+    ): Boolean {
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.P) {
+            if (!awaitPermissions(permissions)) return false
+            val folderPath: String = getPathFromExternalPublicSpace(mediaType, relativePath)
+            return withContext(CommonScope.IO) {
+                listFilesInFolder(folderPath, filter) { File(it.absolutePath!!) }
+                    .map { it.delete() }.all { it }
+            }
+        }
+        return withContext(CommonScope.IO) {
+            deleteFileInExternalPublicSpace(mediaType, relativePath, filter)
+        }
+    }
+
+    /**
+     * 批量删除Uri对应的资源（挂起版本），见 deleteFilesInExternalPublicSpace
+     */
+    suspend fun awaitDeleteFilesInExternalPublicSpace(uris: List<Uri>): List<Boolean> =
+        withContext(CommonScope.IO) { deleteFilesInExternalPublicSpace(uris) }
+
+
     /**
      * 更新外部存储空间的文件
      *
@@ -891,11 +1216,14 @@ object FileUtil {
         updateValues: ContentValues?
     ): Boolean {
         val mediaData = getMediaStoreData(mediaType)
-        val uriList: List<Uri> =
-            getFileInExternalPublicSpace(mediaData, selection, selectionArgs, null) { it.fileUri!! }
-        return kotlin.runCatching {
-            uriList.forEach { updateFileInExternalPublicSpace(it, updateValues) };true
-        }.onFailure { it.printStackTrace() }.getOrDefault(false)
+        val uriList: List<Uri> = MediaQuery.map(
+            mediaData.contentUri!!, PROJECTION_ID, selection, selectionArgs, null
+        ) { it.fileUri }
+        if (uriList.isEmpty()) return true
+        if (updateValues == null) return false
+        val batch = MediaStoreBatch()
+        uriList.forEach { batch.update(it, updateValues) }
+        return batch.apply().all { it.isSuccess }
     }
 
     fun updateFileInExternalPublicSpace(fileUri: Uri?, updateValues: ContentValues?): Boolean =
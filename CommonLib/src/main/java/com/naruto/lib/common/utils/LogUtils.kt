@@ -2,13 +2,20 @@ package com.naruto.lib.common.utils
 
 import android.provider.MediaStore
 import android.util.Log
-import com.naruto.lib.common.Extension.remove
 import com.naruto.lib.common.Global
-import com.naruto.lib.common.TopFunction.currentDateTime
 import com.naruto.lib.common.TopFunction.runInCoroutine
-import com.naruto.lib.common.TopFunction.todayDate
+import com.naruto.lib.common.coroutine.CommonScope
+import com.naruto.lib.common.log.CallSiteCache
+import com.naruto.lib.common.log.FileLogSink
+import com.naruto.lib.common.log.FlightRecorder
+import com.naruto.lib.common.log.KvLogBuilder
+import com.naruto.lib.common.log.LogDispatcher
+import com.naruto.lib.common.log.LogSink
+import com.naruto.lib.common.log.LogcatSink
 import kotlinx.coroutines.flow.collect
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * @Description
@@ -19,24 +26,45 @@ import java.util.*
 private const val DATASTORE_KEY_DOCUMENTABLE = "documentable"
 
 object LogUtils {
-    private const val DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss:SSS"
     private val defTag by lazy {
         Global.runCatching { appNameEN }.getOrDefault(Global.appName).toString()
     }
-    private val logMap by lazy { mutableMapOf<String, StringBuilder>() }
-    private fun log(msg: String, block: ((String, String) -> Unit)) {
-        Throwable().stackTrace[2].run {
-            //block(className, "$msg[$className.$methodName($fileName:$lineNumber)]")
-            val content = "[${toString()}]$msg"
-            if (Global.isDebug || !documentable) block(defTag, content)
-            else {
-                val stringBuilder = logMap.getOrPut(getTodayDate()) { StringBuilder() }
-                stringBuilder.append("${currentDateTime(DATETIME_FORMAT)} $content\n")
-            }
+    private val dispatcherDelegate = lazy {
+        LogDispatcher(bufferCapacity, overflowPolicy).apply {
+            addSink(logcatSink)
+            addSink(fileSink)
+            start()
         }
     }
+    private val dispatcher by dispatcherDelegate
+    private val flightRecorder by lazy { FlightRecorder(flightRecorderSize) }
+
+    private val sampleCounter = AtomicInteger()
+
+    private val tagMinLevels = ConcurrentHashMap<String, Int>()
+
+    /**
+     * 调用位置取 stackTrace[2]，即调用本方法的方法的调用者，新增调用方时需保持该层级
+     */
+    internal fun log(level: Int, tag: String, msg: String, tr: Throwable?) {
+        if (!isLoggable(tag, level)) return
+        val site = if (shouldResolveCallSite(level))
+            CallSiteCache.format(Throwable().stackTrace[2]) else null
+        val time = System.currentTimeMillis()
+        flightRecorder.record(time, level, tag, site, msg)
+        dispatcher.offer(time, level, tag, site, msg, tr)
+    }
+
+    private fun shouldResolveCallSite(level: Int): Boolean = when (callerLocationMode) {
+        CallerLocationMode.ALWAYS -> true
+        CallerLocationMode.OFF -> false
+        CallerLocationMode.WARN_ERROR -> level >= Log.WARN
+        CallerLocationMode.SAMPLED -> level >= Log.WARN
+                || sampleCounter.getAndIncrement() % callerLocationSampleRate.coerceAtLeast(1) == 0
+    }
 
     //是否写入文件
+    @Volatile
     var documentable: Boolean = false
         set(value) {
             if (value == field) return
@@ -44,45 +72,325 @@ object LogUtils {
             runInCoroutine { CommonDataStore.setBooleanValue(DATASTORE_KEY_DOCUMENTABLE, value) }
         }
 
+    /**
+     * 最低输出级别（如 Log.INFO），低于此级别的日志直接忽略；可通过 setMinLevel 为单个tag另行设置
+     */
+    @Volatile
+    var minLevel: Int = Log.VERBOSE
+
+    /**
+     * 调用位置（[类名.方法名(文件名:行号)]）的获取方式。获取调用位置需遍历调用栈，开销较大，
+     * CallSiteCache 只缓存格式化结果，不能省去遍历；默认 ALWAYS 时每条日志都会遍历一次，
+     * 高频日志场景可改为 SAMPLED/WARN_ERROR/OFF（未获取调用位置的日志不参与合并与限流）
+     */
+    @Volatile
+    var callerLocationMode: CallerLocationMode = CallerLocationMode.ALWAYS
+
+    /**
+     * CallerLocationMode.SAMPLED 模式下的采样间隔，即每多少条 VERBOSE/DEBUG/INFO 日志获取一次调用位置
+     */
+    @Volatile
+    var callerLocationSampleRate: Int = 16
+
+    /**
+     * 日志缓冲区容量（条），需在首次写日志前设置
+     */
+    var bufferCapacity: Int = 1024
+
+    /**
+     * 飞行记录器保存的最近日志条数（与输出端无关，调试模式下同样记录），崩溃时写入崩溃报告；需在首次写日志前设置
+     */
+    var flightRecorderSize: Int = 128
+
+    /**
+     * 内存映射文件大小（字节），大于0时日志会先定时写入应用私有目录下的内存映射文件，
+     * 进程被杀或崩溃也不会丢失，下次启动时自动转存到日志文件；需在首次写日志前设置
+     */
+    var mmapBufferSize: Int = 0
+
+    /**
+     * 日志文件格式，需在首次写日志前设置；启用内存映射文件（mmapBufferSize>0）时固定为文本格式。
+     * 二进制文件可通过 BinaryLogDecoder 还原为文本
+     */
+    var fileFormat: FileFormat = FileFormat.TEXT
+
+    /**
+     * 未写入文件的日志达到此字节数时自动写入；<=0表示不按数据量写入
+     */
+    @Volatile
+    var autoFlushBytes: Int = 64 * 1024
+
+    /**
+     * 距上次写入超过此时长（毫秒）且有未写入的日志时自动写入；<=0表示不按时间写入
+     */
+    @Volatile
+    var autoFlushIntervalMillis: Long = 30_000
+
+    /**
+     * 应用退到后台（所有Activity都已ON_STOP）时是否自动写入
+     */
+    @Volatile
+    var flushOnStop: Boolean = true
+
+    /**
+     * 单个日志文件大小上限（字节），超出后滚动写入<date>.N.txt；<=0表示不限制
+     */
+    @Volatile
+    var maxLogFileSize: Long = 2 * 1024 * 1024
+
+    /**
+     * 是否在后台将写满的日志分段压缩为.gz
+     */
+    @Volatile
+    var compressRotatedLogs: Boolean = true
+
+    /**
+     * 日志目录总大小上限（字节），超出后从最旧的文件开始删除；<=0表示不限制
+     */
+    @Volatile
+    var maxTotalLogSize: Long = 0
+
+    /**
+     * 日志保留天数，超过的文件在写日志线程启动及滚动时删除；<=0表示不限制
+     */
+    @Volatile
+    var logRetentionDays: Int = 0
+
+    /**
+     * 是否将同一调用位置连续重复的日志合并为一条"[repeated N times]"汇总；
+     * 只对已获取调用位置的日志生效（见 callerLocationMode），未获取调用位置的日志不合并
+     */
+    @Volatile
+    var suppressDuplicates: Boolean = true
+
+    /**
+     * 每个调用位置每秒最多输出的日志条数，超出的丢弃，恢复后输出"[N lines suppressed by rate limit]"；<=0表示不限流。
+     * 只对已获取调用位置的日志生效（见 callerLocationMode），未获取调用位置的日志不限流
+     */
+    @Volatile
+    var rateLimitPerSecond: Int = 50
+
+    /**
+     * 限流允许的突发条数（令牌桶容量）
+     */
+    @Volatile
+    var rateLimitBurst: Int = 200
+
+    /**
+     * 日志缓冲区已满时的处理策略
+     */
+    var overflowPolicy: OverflowPolicy = OverflowPolicy.DROP_OLDEST
+        set(value) {
+            field = value
+            if (dispatcherDelegate.isInitialized()) dispatcher.policy = value
+        }
+
+    /**
+     * 因缓冲区已满而被丢弃的日志条数
+     */
+    val droppedCount: Long
+        get() = if (dispatcherDelegate.isInitialized()) dispatcher.droppedCount else 0
+
+    /**
+     * logcat输出端，调试模式或 documentable 为false时启用
+     */
+    val logcatSink: LogcatSink by lazy { LogcatSink() }
+
+    /**
+     * 日志文件输出端，非调试模式且 documentable 为true时启用；
+     * 首次访问时读取 mmapBufferSize、fileFormat，相关设置需在此之前完成
+     */
+    val fileSink: FileLogSink by lazy {
+        FileLogSink(mmapBufferSize, fileFormat == FileFormat.BINARY)
+    }
+
+    /**
+     * 添加输出端，如 MemoryTailSink、SocketLogSink；各输出端在同一个分发线程中依次处理，不会阻塞写日志的线程
+     * @param sink LogSink
+     */
+    fun addSink(sink: LogSink) {
+        dispatcher.addSink(sink)
+    }
+
+    /**
+     * 移除输出端，移除前会先调用其 flush
+     * @param sink LogSink
+     */
+    fun removeSink(sink: LogSink) {
+        dispatcher.removeSink(sink)
+    }
+
+    /**
+     * 当前的输出端（含内置的 logcatSink、fileSink）
+     */
+    val sinks: List<LogSink>
+        get() = if (dispatcherDelegate.isInitialized()) dispatcher.sinks.toList() else emptyList()
+
     fun v(msg: String) {
-        log(msg) { tag, m -> Log.v(tag, m) }
+        log(Log.VERBOSE, defTag, msg, null)
+    }
+
+    fun v(tag: String, msg: String) {
+        log(Log.VERBOSE, tag, msg, null)
     }
 
     fun d(msg: String) {
-        log(msg) { tag, m -> Log.d(tag, m) }
+        log(Log.DEBUG, defTag, msg, null)
+    }
+
+    fun d(tag: String, msg: String) {
+        log(Log.DEBUG, tag, msg, null)
     }
 
     fun i(msg: String) {
-        log(msg) { tag, m -> Log.i(tag, m) }
+        log(Log.INFO, defTag, msg, null)
+    }
+
+    fun i(tag: String, msg: String) {
+        log(Log.INFO, tag, msg, null)
     }
 
     fun w(msg: String) {
-        log(msg) { tag, m -> Log.w(tag, m) }
+        log(Log.WARN, defTag, msg, null)
+    }
+
+    fun w(tag: String, msg: String) {
+        log(Log.WARN, tag, msg, null)
     }
 
     fun e(msg: String) {
-        log(msg) { tag, m -> Log.e(tag, m) }
+        log(Log.ERROR, defTag, msg, null)
+    }
+
+    fun e(tag: String, msg: String) {
+        log(Log.ERROR, tag, msg, null)
     }
 
     fun e(msg: String, tr: Throwable) {
-        log(msg) { tag, m -> Log.e(tag, m, tr) }
+        log(Log.ERROR, defTag, msg, tr)
+    }
+
+    fun e(tag: String, msg: String, tr: Throwable) {
+        log(Log.ERROR, tag, msg, tr)
+    }
+
+    //以下为延迟构建日志内容的重载，级别被屏蔽时不会执行msg，也不会获取调用位置
+
+    inline fun v(msg: () -> String) {
+        if (isLoggable(Log.VERBOSE)) v(msg())
+    }
+
+    inline fun v(tag: String, msg: () -> String) {
+        if (isLoggable(tag, Log.VERBOSE)) v(tag, msg())
+    }
+
+    inline fun d(msg: () -> String) {
+        if (isLoggable(Log.DEBUG)) d(msg())
+    }
+
+    inline fun d(tag: String, msg: () -> String) {
+        if (isLoggable(tag, Log.DEBUG)) d(tag, msg())
+    }
+
+    inline fun i(msg: () -> String) {
+        if (isLoggable(Log.INFO)) i(msg())
+    }
+
+    inline fun i(tag: String, msg: () -> String) {
+        if (isLoggable(tag, Log.INFO)) i(tag, msg())
+    }
+
+    inline fun w(msg: () -> String) {
+        if (isLoggable(Log.WARN)) w(msg())
+    }
+
+    inline fun w(tag: String, msg: () -> String) {
+        if (isLoggable(tag, Log.WARN)) w(tag, msg())
+    }
+
+    inline fun e(msg: () -> String) {
+        if (isLoggable(Log.ERROR)) e(msg())
+    }
+
+    inline fun e(tag: String, msg: () -> String) {
+        if (isLoggable(tag, Log.ERROR)) e(tag, msg())
+    }
+
+    inline fun e(tr: Throwable, msg: () -> String) {
+        if (isLoggable(Log.ERROR)) e(msg(), tr)
+    }
+
+    /**
+     * 结构化日志，输出为 logfmt 格式，如：event=upload bytes=1024 ms=35
+     * 用法：LogUtils.kv(Log.INFO, "upload").kv("bytes", n).kv("ms", t).log()
+     * @param level Int 日志级别，如 Log.INFO
+     * @param event String 事件名
+     * @return KvLogBuilder 当前线程复用的构建器，需调用 log() 结束
+     */
+    fun kv(level: Int, event: String): KvLogBuilder = kv(defTag, level, event)
+
+    fun kv(tag: String, level: Int, event: String): KvLogBuilder {
+        if (!isLoggable(tag, level)) return KvLogBuilder.Disabled
+        return KvLogBuilder.obtain().begin(level, tag, event)
     }
 
+    /**
+     * 获取飞行记录器中最近的日志，格式：yyyy-MM-dd HH:mm:ss:SSS 级别/tag: [调用位置]内容
+     * @return String
+     */
+    fun getRecentLogs(): String = flightRecorder.dump(StringBuilder()).toString()
+
+    /**
+     * 默认tag的日志是否会被输出
+     * @param level Int 日志级别，如 Log.DEBUG
+     * @return Boolean
+     */
+    fun isLoggable(level: Int): Boolean = isLoggable(defTag, level)
+
+    /**
+     * 指定tag的日志是否会被输出
+     * @param tag String
+     * @param level Int 日志级别，如 Log.DEBUG
+     * @return Boolean
+     */
+    fun isLoggable(tag: String, level: Int): Boolean {
+        if (tagMinLevels.isEmpty()) return level >= minLevel
+        return level >= (tagMinLevels[tag] ?: minLevel)
+    }
+
+    /**
+     * 设置指定tag的最低输出级别，优先于 minLevel
+     * @param tag String
+     * @param level Int? 为null时移除该tag的设置
+     */
+    fun setMinLevel(tag: String, level: Int?) {
+        if (level == null) tagMinLevels.remove(tag) else tagMinLevels[tag] = level
+    }
+
+    /**
+     * 将缓冲区中的日志写入文件，同时让其他输出端输出缓存的数据（在分发线程执行，多次调用会被合并）
+     * 一般无需手动调用，参见 autoFlushBytes、autoFlushIntervalMillis、flushOnStop
+     */
     fun writeToFile() {
-        if (Global.isDebug || !documentable) return
-        runInCoroutine {
-            for ((date, stringBuilder) in logMap) {
-                if (stringBuilder.isNotEmpty()) {
-                    val backupSB = StringBuilder(stringBuilder)//备份
-                    stringBuilder.clear()
-                    FileUtil.writeDataToExternalPublicSpaceFile(
-                        backupSB.toString().toByteArray(), FileUtil.MediaType.FILE, "log/",
-                        "$date.txt", true
-                    ) { if (!it) stringBuilder.insert(0, backupSB) }
-                }
-            }
-            logMap.remove(logMap.filter { it.key != getTodayDate() && it.value.isEmpty() })
-        }
+        if (!dispatcherDelegate.isInitialized()) return
+        dispatcher.requestFlush()
+    }
+
+    /**
+     * 同步等待缓冲区中的日志交给各输出端并输出，用于崩溃时进程退出前
+     * @param timeoutMillis Long 最长等待时间
+     * @return Boolean 是否在时限内完成
+     */
+    internal fun awaitFlush(timeoutMillis: Long): Boolean {
+        if (!dispatcherDelegate.isInitialized()) return true
+        return dispatcher.awaitFlush(timeoutMillis)
+    }
+
+    /**
+     * 应用退到后台
+     */
+    internal fun onAppStop() {
+        if (flushOnStop) writeToFile()
     }
 
     /**
@@ -98,16 +406,54 @@ object LogUtils {
             selection, arrayOf("${earliestExpiryDay / 1000}")
         )
         runInCoroutine {
-            FileUtil.deleteFileInExternalPublicSpace(FileUtil.MediaType.FILE, "log/", filter)
+            FileUtil.deleteFileInExternalPublicSpace(FileUtil.MediaType.FILE, FileLogSink.DIR_LOG, filter)
         }
     }
 
-    private fun getTodayDate() = todayDate("yyyy-MM-dd")
-
     internal fun init() {
-        runInCoroutine {
+        CommonScope.launchListener("LogUtils:documentable") {
             CommonDataStore.getBooleanValue(DATASTORE_KEY_DOCUMENTABLE, false)
-                .collect { documentable = it }
+                .collect {
+                    documentable = it
+                    //恢复上次进程遗留在内存映射文件中的日志
+                    if (it && !Global.isDebug && !Global.isSafeMode && FileLogSink.hasPendingMmap())
+                        dispatcher.requestFlush()
+                }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @Description 调用位置获取方式
+     * @Author Naruto Yang
+     * @CreateDate 2026/10/18 0018
+     * @Note
+     */
+    enum class CallerLocationMode {
+        OFF,//不获取
+        SAMPLED,//WARN/ERROR始终获取，其余按 callerLocationSampleRate 采样
+        WARN_ERROR,//仅WARN/ERROR获取
+        ALWAYS//始终获取
+    }
+
+    /**
+     * @Description 日志文件格式
+     * @Author Naruto Yang
+     * @CreateDate 2026/10/18 0018
+     * @Note
+     */
+    enum class FileFormat {
+        TEXT,//log/<date>.txt
+        BINARY//log/<date>.blog，时间戳差值编码，tag与调用位置去重
+    }
+
+    /**
+     * @Description 日志缓冲区溢出策略
+     * @Author Naruto Yang
+     * @CreateDate 2026/10/18 0018
+     * @Note
+     */
+    enum class OverflowPolicy {
+        DROP_OLDEST,//丢弃最旧的记录
+        BLOCK//阻塞写日志的线程直到有空位
+    }
+}